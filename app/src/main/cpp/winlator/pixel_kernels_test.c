@@ -0,0 +1,243 @@
+// Host-side golden test and benchmark for pixel_kernels.c, not part of the Android build.
+// cc -O2 -Wall -Wextra -o pixel_kernels_test pixel_kernels_test.c pixel_kernels.c && ./pixel_kernels_test [bench]
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <stdbool.h>
+#include <time.h>
+#include "pixel_kernels.h"
+
+#define WHITE 0xffffff
+#define BLACK 0x000000
+#define ITERATIONS 2000
+#define BENCH_WIDTH 1024
+#define BENCH_HEIGHT 768
+#define BENCH_ROUNDS 20
+
+static int setPixelOp(int srcColor, int dstColor, enum GCFunction gcFunction) {
+    switch (gcFunction) {
+        case GCF_CLEAR :
+            return BLACK;
+        case GCF_AND :
+            return srcColor & dstColor;
+        case GCF_AND_REVERSE :
+            return srcColor & ~dstColor;
+        case GCF_COPY :
+            return srcColor;
+        case GCF_AND_INVERTED :
+            return ~srcColor & dstColor;
+        case GCF_XOR :
+            return srcColor ^ dstColor;
+        case GCF_OR :
+            return srcColor | dstColor;
+        case GCF_NOR :
+            return ~srcColor & ~dstColor;
+        case GCF_EQUIV :
+            return ~srcColor ^ dstColor;
+        case GCF_INVERT :
+            return ~dstColor;
+        case GCF_OR_REVERSE :
+            return srcColor | ~dstColor;
+        case GCF_COPY_INVERTED :
+            return ~srcColor;
+        case GCF_OR_INVERTED :
+            return ~srcColor | dstColor;
+        case GCF_NAND :
+            return ~srcColor | ~dstColor;
+        case GCF_SET :
+            return WHITE;
+        case GCF_NO_OP :
+        default:
+            return dstColor;
+    }
+}
+
+static void goldenCopyAreaOp(int srcX, int srcY, int dstX, int dstY, int width, int height, int srcStride, int dstStride,
+                             const uint8_t *srcData, uint8_t *dstData, enum GCFunction gcFunction) {
+    for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+            int i = (x + srcX + (y + srcY) * srcStride) * 4;
+            int j = (x + dstX + (y + dstY) * dstStride) * 4;
+            int srcColor = (srcData[i+0] << 16) | (srcData[i+1] << 8) | srcData[i+2];
+            int dstColor = (dstData[j+0] << 16) | (dstData[j+1] << 8) | dstData[j+2];
+
+            dstColor = setPixelOp(srcColor, dstColor, gcFunction);
+
+            dstData[j+0] = (dstColor >> 16) & 0xff;
+            dstData[j+1] = (dstColor >> 8) & 0xff;
+            dstData[j+2] = dstColor & 0xff;
+        }
+    }
+}
+
+static void copyAreaOp(int srcX, int srcY, int dstX, int dstY, int width, int height, int srcStride, int dstStride,
+                       const uint32_t *srcData, uint32_t *dstData, enum GCFunction gcFunction) {
+    if (gcFunction == GCF_NO_OP) return;
+    for (int y = 0; y < height; y++) {
+        pixelsCopyOp(srcData + srcX + (y + srcY) * srcStride, dstData + dstX + (y + dstY) * dstStride, width, gcFunction);
+    }
+}
+
+static void goldenDrawBitmap(int width, int height, const uint8_t *srcData, uint32_t *dstData) {
+    int stride = ((width + 32 - 1) >> 5) << 2;
+    for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) *dstData++ = (srcData[x >> 3] & (1 << (x & 7))) ? WHITE : BLACK;
+        srcData += stride;
+    }
+}
+
+static void goldenFillRect(int x, int y, int width, int height, int color, int stride, uint8_t *data) {
+    uint8_t rgba[4] = {color & 255, (color >> 8) & 255, (color >> 16) & 255, 255};
+    for (int i = 0; i < height; i++) {
+        for (int j = 0; j < width; j++) memcpy(data + (x + j + (i + y) * stride) * 4, rgba, 4);
+    }
+}
+
+static void goldenMaskedSelect(const int *srcData, const int *maskData, int *dstData, int count, int foreColor, int backColor) {
+    for (int i = 0; i < count; i++) {
+        dstData[i] = maskData[i] == WHITE ? (srcData[i] == WHITE ? foreColor : backColor) | 0xff000000 : 0x00000000;
+    }
+}
+
+static void fillRandom(void *data, int size) {
+    uint8_t *bytes = data;
+    for (int i = 0; i < size; i++) bytes[i] = rand();
+}
+
+static bool check(bool passed, const char *kernel, int iteration, int width, int height) {
+    if (!passed) printf("FAIL %s iteration=%d width=%d height=%d\n", kernel, iteration, width, height);
+    return passed;
+}
+
+static int runGoldenTests() {
+    int failures = 0;
+
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+        int width = 1 + rand() % 70;
+        int height = 1 + rand() % 20;
+        int size = width * height * 4;
+        uint8_t *srcData = malloc(size);
+        uint8_t *expected = malloc(size);
+        uint8_t *actual = malloc(size);
+
+        enum GCFunction gcFunction = iteration % 16;
+        int areaWidth = 1 + rand() % width;
+        int areaHeight = 1 + rand() % height;
+        int srcX = rand() % (width - areaWidth + 1);
+        int srcY = rand() % (height - areaHeight + 1);
+        int dstX = rand() % (width - areaWidth + 1);
+        int dstY = rand() % (height - areaHeight + 1);
+
+        fillRandom(srcData, size);
+        fillRandom(expected, size);
+        memcpy(actual, expected, size);
+        goldenCopyAreaOp(srcX, srcY, dstX, dstY, areaWidth, areaHeight, width, width, srcData, expected, gcFunction);
+        copyAreaOp(srcX, srcY, dstX, dstY, areaWidth, areaHeight, width, width, (uint32_t*)srcData, (uint32_t*)actual, gcFunction);
+        if (!check(memcmp(expected, actual, size) == 0, "pixelsCopyOp", iteration, width, height)) failures++;
+
+        int color = rand();
+        memcpy(actual, expected, size);
+        goldenFillRect(dstX, dstY, areaWidth, areaHeight, color, width, expected);
+        for (int y = 0; y < areaHeight; y++) {
+            pixelsFill((uint32_t*)actual + dstX + (y + dstY) * width, areaWidth, 0xff000000 | (color & 0xffffff));
+        }
+        if (!check(memcmp(expected, actual, size) == 0, "pixelsFill", iteration, width, height)) failures++;
+
+        int stride = ((width + 32 - 1) >> 5) << 2;
+        uint8_t *bitmap = malloc(stride * height);
+        fillRandom(bitmap, stride * height);
+        goldenDrawBitmap(width, height, bitmap, (uint32_t*)expected);
+        for (int y = 0; y < height; y++) {
+            pixelsExpandBits(bitmap + y * stride, (uint32_t*)actual + y * width, width, WHITE, BLACK);
+        }
+        if (!check(memcmp(expected, actual, size) == 0, "pixelsExpandBits", iteration, width, height)) failures++;
+
+        int count = width * height;
+        uint32_t *maskData = malloc(size);
+        fillRandom(maskData, size);
+        for (int i = 0; i < count; i++) {
+            if (rand() & 1) maskData[i] = WHITE;
+            if (rand() & 1) ((uint32_t*)srcData)[i] = WHITE;
+        }
+        int foreColor = rand() & 0xffffff;
+        int backColor = rand() & 0xffffff;
+        goldenMaskedSelect((int*)srcData, (int*)maskData, (int*)expected, count, foreColor, backColor);
+        pixelsMaskedSelect((uint32_t*)srcData, maskData, (uint32_t*)actual, count, WHITE, foreColor, backColor);
+        if (!check(memcmp(expected, actual, size) == 0, "pixelsMaskedSelect", iteration, width, height)) failures++;
+
+        free(srcData);
+        free(expected);
+        free(actual);
+        free(bitmap);
+        free(maskData);
+    }
+
+    printf("%d iterations, %d failures\n", ITERATIONS, failures);
+    return failures;
+}
+
+static double elapsedSeconds(clock_t startTime) {
+    return (double)(clock() - startTime) / CLOCKS_PER_SEC;
+}
+
+static void runBenchmark() {
+    int size = BENCH_WIDTH * BENCH_HEIGHT * 4;
+    uint8_t *srcData = malloc(size);
+    uint8_t *dstData = malloc(size);
+    fillRandom(srcData, size);
+    fillRandom(dstData, size);
+
+    for (enum GCFunction gcFunction = GCF_CLEAR; gcFunction <= GCF_SET; gcFunction++) {
+        if (gcFunction == GCF_NO_OP) continue;
+        clock_t startTime = clock();
+        for (int i = 0; i < BENCH_ROUNDS; i++) {
+            goldenCopyAreaOp(0, 0, 0, 0, BENCH_WIDTH, BENCH_HEIGHT, BENCH_WIDTH, BENCH_WIDTH, srcData, dstData, gcFunction);
+        }
+        double goldenTime = elapsedSeconds(startTime);
+
+        startTime = clock();
+        for (int i = 0; i < BENCH_ROUNDS; i++) {
+            copyAreaOp(0, 0, 0, 0, BENCH_WIDTH, BENCH_HEIGHT, BENCH_WIDTH, BENCH_WIDTH, (uint32_t*)srcData, (uint32_t*)dstData, gcFunction);
+        }
+        double kernelTime = elapsedSeconds(startTime);
+
+        printf("copyAreaOp gcFunction=%2d: scalar %.3fs, kernel %.3fs (%.1fx)\n", gcFunction, goldenTime, kernelTime, goldenTime / kernelTime);
+    }
+
+    uint32_t *maskData = malloc(size);
+    uint8_t *bitmap = malloc(size / 32);
+    fillRandom(maskData, size);
+    fillRandom(bitmap, size / 32);
+    int count = BENCH_WIDTH * BENCH_HEIGHT;
+
+    clock_t startTime = clock();
+    for (int i = 0; i < BENCH_ROUNDS; i++) goldenMaskedSelect((int*)srcData, (int*)maskData, (int*)dstData, count, WHITE, BLACK);
+    double goldenTime = elapsedSeconds(startTime);
+    startTime = clock();
+    for (int i = 0; i < BENCH_ROUNDS; i++) pixelsMaskedSelect((uint32_t*)srcData, maskData, (uint32_t*)dstData, count, WHITE, WHITE, BLACK);
+    double kernelTime = elapsedSeconds(startTime);
+    printf("maskedSelect: scalar %.3fs, kernel %.3fs (%.1fx)\n", goldenTime, kernelTime, goldenTime / kernelTime);
+
+    startTime = clock();
+    for (int i = 0; i < BENCH_ROUNDS; i++) goldenDrawBitmap(BENCH_WIDTH, BENCH_HEIGHT, bitmap, (uint32_t*)dstData);
+    goldenTime = elapsedSeconds(startTime);
+    startTime = clock();
+    for (int i = 0; i < BENCH_ROUNDS; i++) {
+        for (int y = 0; y < BENCH_HEIGHT; y++) pixelsExpandBits(bitmap + y * (BENCH_WIDTH / 8), (uint32_t*)dstData + y * BENCH_WIDTH, BENCH_WIDTH, WHITE, BLACK);
+    }
+    kernelTime = elapsedSeconds(startTime);
+    printf("drawBitmap: scalar %.3fs, kernel %.3fs (%.1fx)\n", goldenTime, kernelTime, goldenTime / kernelTime);
+
+    free(srcData);
+    free(dstData);
+    free(maskData);
+    free(bitmap);
+}
+
+int main(int argc, char **argv) {
+    srand(1);
+    int failures = runGoldenTests();
+    if (argc > 1 && strcmp(argv[1], "bench") == 0) runBenchmark();
+    return failures > 0 ? 1 : 0;
+}
@@ -6,6 +6,7 @@
 #include <unistd.h>
 #include <string.h>
 #include <fcntl.h>
+#include <linux/falloc.h>
 #include <stdbool.h>
 #include <pthread.h>
 #include <sys/ipc.h>
@@ -43,6 +44,11 @@ Java_com_winlator_sysvshm_SysVSharedMemory_createMemoryFd(JNIEnv *env, jclass ob
     return fd;
 }
 
+JNIEXPORT jboolean JNICALL
+Java_com_winlator_sysvshm_SysVSharedMemory_clearMemoryFd(JNIEnv *env, jclass obj, jint fd, jlong size) {
+    return fallocate(fd, FALLOC_FL_PUNCH_HOLE | FALLOC_FL_KEEP_SIZE, 0, size) == 0;
+}
+
 JNIEXPORT jobject JNICALL
 Java_com_winlator_sysvshm_SysVSharedMemory_mapSHMSegment(JNIEnv *env, jobject obj, jint fd, jlong size, jint offset, jboolean readonly) {
     int prot = readonly ? PROT_READ : PROT_WRITE | PROT_READ;
@@ -8,14 +8,17 @@
 #include <unistd.h>
 #include <string.h>
 #include <malloc.h>
+#include <errno.h>
 #include <jni.h>
 #include <android/log.h>
 
 #define printf(...) __android_log_print(ANDROID_LOG_DEBUG, "System.out", __VA_ARGS__);
-#define MAX_EVENTS 10
+#define MAX_EVENTS 1024
 #define MAX_FDS 32
+#define MAX_IOVS 64
+#define EVENT_NEW_CONNECTION (1 << 24)
 
-struct epoll_event events[MAX_EVENTS];
+static jmethodID addAncillaryFdMethod = NULL;
 
 JNIEXPORT jint JNICALL
 Java_com_winlator_xconnector_XConnectorEpoll_createAFUnixSocket(JNIEnv *env, jobject obj,
@@ -36,7 +39,7 @@ Java_com_winlator_xconnector_XConnectorEpoll_createAFUnixSocket(JNIEnv *env, job
 
     unlink(serverAddr.sun_path);
     if (bind(fd, (struct sockaddr*) &serverAddr, addrLength) < 0) goto error;
-    if (listen(fd, MAX_EVENTS) < 0) goto error;
+    if (listen(fd, SOMAXCONN) < 0) goto error;
 
     return fd;
     error:
@@ -54,37 +57,54 @@ Java_com_winlator_xconnector_XConnectorEpoll_closeFd(JNIEnv *env, jobject obj, j
     close(fd);
 }
 
-JNIEXPORT jboolean JNICALL
+JNIEXPORT jint JNICALL
 Java_com_winlator_xconnector_XConnectorEpoll_doEpollIndefinitely(JNIEnv *env, jobject obj,
                                                                  jint epollFd, jint serverFd,
-                                                                 jboolean addClientToEpoll) {
-    jclass cls = (*env)->GetObjectClass(env, obj);
-    jmethodID handleNewConnection = (*env)->GetMethodID(env, cls, "handleNewConnection", "(I)V");
-    jmethodID handleExistingConnection = (*env)->GetMethodID(env, cls, "handleExistingConnection", "(I)V");
-
-    int numFds = epoll_wait(epollFd, events, MAX_EVENTS, -1);
+                                                                 jboolean addClientToEpoll,
+                                                                 jboolean oneShot,
+                                                                 jintArray readyEvents) {
+    int maxEvents = (*env)->GetArrayLength(env, readyEvents) / 2;
+    if (maxEvents <= 0) return -1;
+    if (maxEvents > MAX_EVENTS) maxEvents = MAX_EVENTS;
+
+    struct epoll_event events[maxEvents];
+    jint results[maxEvents * 2];
+
+    int numFds;
+    do numFds = epoll_wait(epollFd, events, maxEvents, -1);
+    while (numFds < 0 && errno == EINTR);
+    if (numFds < 0) return -1;
+
+    int count = 0;
     for (int i = 0; i < numFds; i++) {
         if (events[i].data.fd == serverFd) {
             int clientFd = accept(serverFd, NULL, NULL);
-            if (clientFd >= 0) {
-                if (addClientToEpoll) {
-                    struct epoll_event event;
-                    event.data.fd = clientFd;
-                    event.events = EPOLLIN;
-
-                    if (epoll_ctl(epollFd, EPOLL_CTL_ADD, clientFd, &event) >= 0) {
-                        (*env)->CallVoidMethod(env, obj, handleNewConnection, clientFd);
-                    }
+            if (clientFd < 0) continue;
+
+            if (addClientToEpoll) {
+                struct epoll_event event;
+                event.data.fd = clientFd;
+                event.events = oneShot ? EPOLLIN | EPOLLONESHOT : EPOLLIN;
+
+                if (epoll_ctl(epollFd, EPOLL_CTL_ADD, clientFd, &event) < 0) {
+                    close(clientFd);
+                    continue;
                 }
-                else (*env)->CallVoidMethod(env, obj, handleNewConnection, clientFd);
             }
+
+            results[count * 2 + 0] = clientFd;
+            results[count * 2 + 1] = EVENT_NEW_CONNECTION;
+            count++;
         }
-        else if (events[i].events & EPOLLIN) {
-            (*env)->CallVoidMethod(env, obj, handleExistingConnection, events[i].data.fd);
+        else {
+            results[count * 2 + 0] = events[i].data.fd;
+            results[count * 2 + 1] = events[i].events;
+            count++;
         }
     }
 
-    return numFds >= 0;
+    if (count > 0) (*env)->SetIntArrayRegion(env, readyEvents, 0, count * 2, results);
+    return count;
 }
 
 JNIEXPORT jboolean JNICALL
@@ -98,6 +118,17 @@ Java_com_winlator_xconnector_XConnectorEpoll_addFdToEpoll(JNIEnv *env, jobject o
     return JNI_TRUE;
 }
 
+JNIEXPORT jboolean JNICALL
+Java_com_winlator_xconnector_XConnectorEpoll_modifyFdInEpoll(JNIEnv *env, jobject obj,
+                                                             jint epollFd,
+                                                             jint fd, jint events) {
+    struct epoll_event event;
+    event.data.fd = fd;
+    event.events = events;
+    if (epoll_ctl(epollFd, EPOLL_CTL_MOD, fd, &event) < 0) return JNI_FALSE;
+    return JNI_TRUE;
+}
+
 JNIEXPORT void JNICALL
 Java_com_winlator_xconnector_XConnectorEpoll_removeFdFromEpoll(JNIEnv *env, jobject obj,
                                                                jint epollFd, jint fd) {
@@ -118,6 +149,100 @@ Java_com_winlator_xconnector_ClientSocket_write(JNIEnv *env, jobject obj, jint f
     return write(fd, dataAddr, length);
 }
 
+JNIEXPORT jint JNICALL
+Java_com_winlator_xconnector_ClientSocket_send(JNIEnv *env, jobject obj, jint fd, jobject data,
+                                               jint offset, jint length, jboolean nonBlocking) {
+    char *dataAddr = (*env)->GetDirectBufferAddress(env, data);
+    int flags = nonBlocking ? MSG_NOSIGNAL | MSG_DONTWAIT : MSG_NOSIGNAL;
+
+    ssize_t res;
+    do res = send(fd, dataAddr + offset, length, flags);
+    while (res < 0 && errno == EINTR);
+
+    if (res < 0 && nonBlocking && (errno == EAGAIN || errno == EWOULDBLOCK)) return 0;
+    return res;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_winlator_xconnector_ClientSocket_writev(JNIEnv *env, jobject obj, jint fd,
+                                                 jobjectArray buffers, jintArray offsets,
+                                                 jintArray lengths, jint count, jint ancillaryFd,
+                                                 jboolean nonBlocking) {
+    if (count <= 0 || count > MAX_IOVS) return -1;
+
+    struct iovec iov[MAX_IOVS];
+    jint *offsetsPtr = (*env)->GetIntArrayElements(env, offsets, NULL);
+    jint *lengthsPtr = (*env)->GetIntArrayElements(env, lengths, NULL);
+    ssize_t totalLength = 0;
+
+    for (int i = 0; i < count; i++) {
+        jobject buffer = (*env)->GetObjectArrayElement(env, buffers, i);
+        char *dataAddr = (*env)->GetDirectBufferAddress(env, buffer);
+        (*env)->DeleteLocalRef(env, buffer);
+
+        iov[i].iov_base = dataAddr + offsetsPtr[i];
+        iov[i].iov_len = lengthsPtr[i];
+        totalLength += lengthsPtr[i];
+    }
+
+    (*env)->ReleaseIntArrayElements(env, offsets, offsetsPtr, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, lengths, lengthsPtr, JNI_ABORT);
+
+    struct {
+        struct cmsghdr align;
+        int fds[1];
+    } ctrlmsg;
+
+    struct msghdr msg = {
+        .msg_name = NULL,
+        .msg_namelen = 0,
+        .msg_iov = iov,
+        .msg_iovlen = count,
+        .msg_flags = 0,
+        .msg_control = NULL,
+        .msg_controllen = 0
+    };
+
+    if (ancillaryFd != -1) {
+        msg.msg_control = &ctrlmsg;
+        msg.msg_controllen = sizeof(struct cmsghdr) + sizeof(int);
+        struct cmsghdr *cmsg = CMSG_FIRSTHDR(&msg);
+        cmsg->cmsg_level = SOL_SOCKET;
+        cmsg->cmsg_type = SCM_RIGHTS;
+        cmsg->cmsg_len = msg.msg_controllen;
+        ((int*)CMSG_DATA(cmsg))[0] = ancillaryFd;
+    }
+
+    int flags = nonBlocking ? MSG_NOSIGNAL | MSG_DONTWAIT : MSG_NOSIGNAL;
+    ssize_t bytesWritten = 0;
+    while (bytesWritten < totalLength) {
+        ssize_t res = sendmsg(fd, &msg, flags);
+        if (res < 0) {
+            if (errno == EINTR) continue;
+            if (nonBlocking && (errno == EAGAIN || errno == EWOULDBLOCK)) break;
+            return -1;
+        }
+
+        bytesWritten += res;
+        msg.msg_control = NULL;
+        msg.msg_controllen = 0;
+
+        size_t remaining = (size_t)res;
+        while (msg.msg_iovlen > 0 && remaining >= msg.msg_iov->iov_len) {
+            remaining -= msg.msg_iov->iov_len;
+            msg.msg_iov++;
+            msg.msg_iovlen--;
+        }
+
+        if (msg.msg_iovlen > 0) {
+            msg.msg_iov->iov_base = (char*)msg.msg_iov->iov_base + remaining;
+            msg.msg_iov->iov_len -= remaining;
+        }
+    }
+
+    return bytesWritten;
+}
+
 JNIEXPORT jint JNICALL
 Java_com_winlator_xconnector_XConnectorEpoll_createEventFd(JNIEnv *env, jobject obj) {
     return eventfd(0, EFD_NONBLOCK);
@@ -151,11 +276,15 @@ Java_com_winlator_xconnector_ClientSocket_recvAncillaryMsg(JNIEnv *env, jobject
             if (cmsg->cmsg_level == SOL_SOCKET && cmsg->cmsg_type == SCM_RIGHTS) {
                 int numFds = (cmsg->cmsg_len - CMSG_LEN(0)) / sizeof(int);
                 if (numFds > 0) {
-                    jclass cls = (*env)->GetObjectClass(env, obj);
-                    jmethodID addAncillaryFd = (*env)->GetMethodID(env, cls, "addAncillaryFd", "(I)V");
+                    if (!addAncillaryFdMethod) {
+                        jclass cls = (*env)->GetObjectClass(env, obj);
+                        addAncillaryFdMethod = (*env)->GetMethodID(env, cls, "addAncillaryFd", "(I)V");
+                        (*env)->DeleteLocalRef(env, cls);
+                    }
+
                     for (int i = 0; i < numFds; i++) {
                         int ancillaryFd = ((int*)CMSG_DATA(cmsg))[i];
-                        (*env)->CallVoidMethod(env, obj, addAncillaryFd, ancillaryFd);
+                        (*env)->CallVoidMethod(env, obj, addAncillaryFdMethod, ancillaryFd);
                     }
                 }
             }
@@ -194,7 +323,7 @@ Java_com_winlator_xconnector_ClientSocket_sendAncillaryMsg(JNIEnv *env, jobject
     return sendmsg(clientFd, &msg, 0);
 }
 
-JNIEXPORT jboolean JNICALL
+JNIEXPORT jint JNICALL
 Java_com_winlator_xconnector_XConnectorEpoll_waitForSocketRead(JNIEnv *env, jobject obj, jint clientFd, jint shutdownFd) {
     struct pollfd pfds[2];
     pfds[0].fd = clientFd;
@@ -203,13 +332,9 @@ Java_com_winlator_xconnector_XConnectorEpoll_waitForSocketRead(JNIEnv *env, jobj
     pfds[1].fd = shutdownFd;
     pfds[1].events = POLLIN;
 
-    int res = poll(pfds, 2, -1);
-    if (res < 0 || (pfds[1].revents & POLLIN)) return JNI_FALSE;
-
-    if (pfds[0].revents & POLLIN) {
-        jclass cls = (*env)->GetObjectClass(env, obj);
-        jmethodID handleExistingConnection = (*env)->GetMethodID(env, cls, "handleExistingConnection", "(I)V");
-        (*env)->CallVoidMethod(env, obj, handleExistingConnection, clientFd);
-    }
-    return JNI_TRUE;
+    int res;
+    do res = poll(pfds, 2, -1);
+    while (res < 0 && errno == EINTR);
+    if (res < 0 || (pfds[1].revents & POLLIN)) return -1;
+    return pfds[0].revents;
 }
\ No newline at end of file
@@ -580,6 +580,9 @@ public class SettingsFragment extends Fragment {
         // Initialize DRI3 checkbox
         final CheckBox cbUseDRI3 = view.findViewById(R.id.CBUseDRI3);
         cbUseDRI3.setChecked(preferences.getBoolean("use_dri3", true));
+
+        final CheckBox cbXServerShardedDispatch = view.findViewById(R.id.CBXServerShardedDispatch);
+        cbXServerShardedDispatch.setChecked(preferences.getBoolean("xserver_sharded_dispatch", false));
     }
 
     private void initGyroSettings(View view) {
@@ -766,6 +769,7 @@ public class SettingsFragment extends Fragment {
 
         // DRI3 and debug settings
         editor.putBoolean("use_dri3", ((CheckBox) view.findViewById(R.id.CBUseDRI3)).isChecked());
+        editor.putBoolean("xserver_sharded_dispatch", ((CheckBox) view.findViewById(R.id.CBXServerShardedDispatch)).isChecked());
         editor.putBoolean("enable_wine_debug", ((CheckBox) view.findViewById(R.id.CBEnableWineDebug)).isChecked());
         editor.putBoolean("enable_box86_64_logs", ((CheckBox) view.findViewById(R.id.CBEnableBox86_64Logs)).isChecked());
 
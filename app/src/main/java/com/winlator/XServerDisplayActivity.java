@@ -13,6 +13,7 @@ import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.Menu;
@@ -41,6 +42,7 @@ import com.winlator.box86_64.rc.RCFile;
 import com.winlator.box86_64.rc.RCManager;
 import com.winlator.container.Container;
 import com.winlator.container.ContainerManager;
+import com.winlator.container.InstallManifest;
 import com.winlator.container.Shortcut;
 import com.winlator.contentdialog.ContentDialog;
 import com.winlator.contentdialog.DXVKConfigDialog;
@@ -69,6 +71,7 @@ import com.winlator.inputcontrols.ExternalController;
 import com.winlator.inputcontrols.InputControlsManager;
 import com.winlator.math.Mathf;
 import com.winlator.math.XForm;
+import com.winlator.renderer.ChoreographerFrameClock;
 import com.winlator.renderer.GLRenderer;
 import com.winlator.widget.FrameRating;
 import com.winlator.widget.InputControlsView;
@@ -94,6 +97,7 @@ import com.winlator.xserver.ScreenInfo;
 import com.winlator.xserver.Window;
 import com.winlator.xserver.WindowManager;
 import com.winlator.xserver.XServer;
+import com.winlator.xserver.extensions.PresentExtension;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -131,6 +135,8 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
     private boolean firstTimeBoot = false;
     private SharedPreferences preferences;
     private OnExtractFileListener onExtractFileListener;
+    private InstallManifest installManifest;
+    private InstallManifest driverManifest;
     private WinHandler winHandler;
     private float globalCursorSpeed = 1.0f;
     private MagnifierView magnifierView;
@@ -472,11 +478,16 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
             }
 
             Executors.newSingleThreadExecutor().execute(() -> {
+                long startTime = SystemClock.elapsedRealtime();
                 if (!isGenerateWineprefix()) {
                     setupWineSystemFiles();
+                    long time = SystemClock.elapsedRealtime();
                     extractGraphicsDriverFiles();
+                    time = logStageTime("graphicsDriver", time);
                     changeWineAudioDriver();
+                    logStageTime("audioDriver", time);
                 }
+                logStageTime("total", startTime);
                 setupXEnvironment();
             });
         };
@@ -804,10 +815,19 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
         AppUtils.restartApplication(this);
     }
 
+    private long logStageTime(String stage, long startTime) {
+        long currTime = SystemClock.elapsedRealtime();
+        Log.d("LaunchPreparation", stage + ": " + (currTime - startTime) + " ms");
+        return currTime;
+    }
+
     private void setupWineSystemFiles() {
+        long time = SystemClock.elapsedRealtime();
         String appVersion = String.valueOf(AppUtils.getVersionCode(this));
         String imgVersion = String.valueOf(imageFs.getVersion());
         boolean containerDataChanged = false;
+        installManifest = new InstallManifest(new File(container.getRootDir(), ".install_manifest.json"));
+        driverManifest = new InstallManifest(new File(imageFs.getConfigDir(), "install_manifest.json"));
 
         if (!container.getExtra("appVersion").equals(appVersion) || !container.getExtra("imgVersion").equals(imgVersion)) {
             applyGeneralPatches(container);
@@ -815,6 +835,7 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
             container.putExtra("imgVersion", imgVersion);
             containerDataChanged = true;
         }
+        time = logStageTime("generalPatches", time);
 
         String dxwrapper = this.dxwrapper;
         if (dxwrapper.equals("dxvk"))
@@ -827,31 +848,40 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
         }
 
 
-        if (!dxwrapper.equals(container.getExtra("dxwrapper"))) {
-            extractDXWrapperFiles(dxwrapper);
+        if (!installManifest.isInstalled("dxwrapper", dxwrapper)) {
+            InstallManifest.Installation installation = new InstallManifest.Installation();
+            extractDXWrapperFiles(dxwrapper, installation.record(onExtractFileListener));
+            installManifest.commit("dxwrapper", dxwrapper, installation, false);
             container.putExtra("dxwrapper", dxwrapper);
             containerDataChanged = true;
         }
+        time = logStageTime("dxwrapper", time);
 
         if (dxwrapper.equals("cnc-ddraw"))
             envVars.put("CNC_DDRAW_CONFIG_FILE", "C:\\ProgramData\\cnc-ddraw\\ddraw.ini");
 
         String wincomponents = shortcut != null ? shortcut.getExtra("wincomponents", container.getWinComponents()) : container.getWinComponents();
-        if (!wincomponents.equals(container.getExtra("wincomponents"))) {
-            extractWinComponentFiles();
+        if (extractWinComponentFiles(wincomponents)) {
             container.putExtra("wincomponents", wincomponents);
             containerDataChanged = true;
         }
+        time = logStageTime("wincomponents", time);
 
         String desktopTheme = container.getDesktopTheme();
-        if (!(desktopTheme + "," + xServer.screenInfo).equals(container.getExtra("desktopTheme"))) {
-            WineThemeManager.apply(this, new WineThemeManager.ThemeInfo(desktopTheme), xServer.screenInfo);
+        if (!installManifest.isInstalled("desktopTheme", desktopTheme + "," + xServer.screenInfo)) {
+            WineThemeManager.ThemeInfo themeInfo = new WineThemeManager.ThemeInfo(desktopTheme);
+            WineThemeManager.apply(this, themeInfo, xServer.screenInfo);
+            InstallManifest.Installation installation = new InstallManifest.Installation();
+            if (themeInfo.backgroundType == WineThemeManager.BackgroundType.IMAGE) installation.add(new File(imageFs.getRootDir(), ImageFs.CACHE_PATH + "/wallpaper.bmp"));
+            installManifest.commit("desktopTheme", desktopTheme + "," + xServer.screenInfo, installation, false);
             container.putExtra("desktopTheme", desktopTheme + "," + xServer.screenInfo);
             containerDataChanged = true;
         }
+        time = logStageTime("desktopTheme", time);
 
         WineStartMenuCreator.create(this, container);
         WineUtils.createDosdevicesSymlinks(container);
+        time = logStageTime("startMenu", time);
 
         String startupSelection = String.valueOf(container.getStartupSelection());
         if (!startupSelection.equals(container.getExtra("startupSelection"))) {
@@ -861,6 +891,7 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
         }
 
         if (containerDataChanged) container.saveData();
+        logStageTime("services", time);
     }
 
     private void setupXEnvironment() {
@@ -903,7 +934,9 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
 
         environment = new XEnvironment(this, imageFs);
         environment.addComponent(new SysVSharedMemoryComponent(xServer, UnixSocketConfig.createSocket(rootPath, UnixSocketConfig.SYSVSHM_SERVER_PATH)));
-        environment.addComponent(new XServerComponent(xServer, UnixSocketConfig.createSocket(rootPath, UnixSocketConfig.XSERVER_PATH)));
+        XServerComponent xServerComponent = new XServerComponent(xServer, UnixSocketConfig.createSocket(rootPath, UnixSocketConfig.XSERVER_PATH));
+        if (preferences.getBoolean("xserver_sharded_dispatch", false)) xServerComponent.setClientShardCount(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        environment.addComponent(xServerComponent);
         environment.addComponent(new NetworkInfoUpdateComponent());
 
         if (audioDriver.equals("alsa")) {
@@ -956,6 +989,9 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
         xServer.setRenderer(renderer);
         rootView.addView(xServerView);
 
+        PresentExtension presentExtension = xServer.getExtension(PresentExtension.MAJOR_OPCODE);
+        presentExtension.setFrameClock(new ChoreographerFrameClock(getWindowManager().getDefaultDisplay().getRefreshRate()));
+
         globalCursorSpeed = preferences.getFloat("cursor_speed", 1.0f);
         touchpadView = new TouchpadView(this, xServer, timeoutHandler, hideControlsRunnable);
         touchpadView.setSensitivity(globalCursorSpeed);
@@ -987,6 +1023,7 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
         if (container != null && container.isShowFPS()) {
             frameRating = new FrameRating(this);
             frameRating.setVisibility(View.GONE);
+            if (preferences.getBoolean("enable_wine_debug", false)) frameRating.setRenderer(renderer);
             rootView.addView(frameRating);
         }
 
@@ -1296,12 +1333,8 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
 
         Log.d("GraphicsDriverExtraction", "Cache ID: " + cacheId);
 
-        boolean changed = !cacheId.equals(container.getExtra("graphicsDriver"));
-
-        // If launching without a shortcut (container-only launch), always extract to reset to the container's default
-        if (shortcut == null) {
-            changed = true;  // Force extraction when no shortcut is present to ensure correct driver is used
-        }
+        boolean changed = !driverManifest.isInstalled("graphicsDriver", cacheId);
+        InstallManifest.Installation installation = new InstallManifest.Installation();
 
         File rootDir = imageFs.getRootDir(); // Target the root directory of imagefs
 
@@ -1345,8 +1378,8 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
             boolean extractionSucceeded = false;
             if (changed) {
                 // Use selectedDriverVersion instead of DefaultVersion.TURNIP
-                extractionSucceeded = TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, this, "graphics_driver/turnip-" + selectedDriverVersion + ".tzst", rootDir) &&
-                        TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, this, "graphics_driver/zink-" + DefaultVersion.ZINK + ".tzst", rootDir);
+                extractionSucceeded = TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, this, "graphics_driver/turnip-" + selectedDriverVersion + ".tzst", rootDir, installation.record(null)) &&
+                        TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, this, "graphics_driver/zink-" + DefaultVersion.ZINK + ".tzst", rootDir, installation.record(null));
 
                 if (extractionSucceeded) {
                     Log.d("GraphicsDriverExtraction", "Extraction from .tzst files succeeded.");
@@ -1356,7 +1389,7 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
             }
 
 
-            if (!extractionSucceeded) {
+            if (changed && !extractionSucceeded) {
                 // Parse version string for the actual version number, removing "Turnip-"
                 String normalizedVersion = selectedDriverVersion.replaceFirst("Turnip-", "");
                 File contentsDir = new File(getFilesDir(), "contents");
@@ -1379,27 +1412,30 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
                         if (file.isFile()) {
                             if (file.getName().equals("freedreno_icd.aarch64.json")) {
                                 File targetFile = new File(icdTargetDir, file.getName());
-                                FileUtils.copy(file, targetFile);
+                                FileUtils.copy(file, targetFile, installation::add);
                                 Log.d("GraphicsDriverExtraction", "Moved " + file.getName() + " to " + icdTargetDir.getAbsolutePath());
                             } else {
                                 File targetFile = new File(libDir, file.getName());
-                                FileUtils.copy(file, targetFile);
+                                FileUtils.copy(file, targetFile, installation::add);
                             }
                         } else if (file.isDirectory()) {
                             File targetDir = new File(libDir, file.getName());
-                            FileUtils.copy(file, targetDir);
+                            FileUtils.copy(file, targetDir, installation::add);
                         }
                     }
 
                     if (zinkDir.exists() && zinkDir.isDirectory()) {
-                        FileUtils.copy(zinkDir, libDir); // Copy contents of 'zink' folder if exists
+                        FileUtils.copy(zinkDir, libDir, installation::add); // Copy contents of 'zink' folder if exists
                     }
                     Log.d("GraphicsDriverExtraction", "Driver successfully installed from contents manager: " + selectedDriverVersion);
                     contentsManager.markGraphicsDriverInstalled(selectedDriverVersion); // Mark as installed
+                    extractionSucceeded = true;
                 } else {
                     Log.d("GraphicsDriverExtraction", "Driver directory not found in contents: " + turnipDir.getAbsolutePath());
                 }
             }
+
+            if (changed && extractionSucceeded) driverManifest.commit("graphicsDriver", cacheId, installation, true);
         } else if (graphicsDriver.equals("virgl")) {
             envVars.put("GALLIUM_DRIVER", "virpipe");
             envVars.put("VIRGL_NO_READBACK", "true");
@@ -1407,8 +1443,8 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
             envVars.put("MESA_EXTENSION_OVERRIDE", "-GL_EXT_vertex_array_bgra");
             envVars.put("MESA_GL_VERSION_OVERRIDE", "3.1");
             envVars.put("vblank_mode", "0");
-            if (changed)
-                TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, this, "graphics_driver/virgl-" + DefaultVersion.VIRGL + ".tzst", rootDir);
+            if (changed && TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, this, "graphics_driver/virgl-" + DefaultVersion.VIRGL + ".tzst", rootDir, installation.record(null)))
+                driverManifest.commit("graphicsDriver", cacheId, installation, true);
         }
     }
 
@@ -1567,7 +1603,7 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
 
 
 
-    private void extractDXWrapperFiles(String dxwrapper) {
+    private void extractDXWrapperFiles(String dxwrapper, OnExtractFileListener onExtractFileListener) {
         final String[] dlls = {"d3d10.dll", "d3d10_1.dll", "d3d10core.dll", "d3d11.dll", "d3d12.dll", "d3d12core.dll", "d3d8.dll", "d3d9.dll", "dxgi.dll", "ddraw.dll"};
         if (firstTimeBoot && !dxwrapper.equals("vkd3d")) cloneOriginalDllFiles(dlls);
         File rootDir = imageFs.getRootDir();
@@ -1639,15 +1675,15 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
         return 0;
     }
 
-    private void extractWinComponentFiles() {
+    private boolean extractWinComponentFiles(String wincomponents) {
         File rootDir = imageFs.getRootDir();
         File windowsDir = new File(rootDir, ImageFs.WINEPREFIX + "/drive_c/windows");
         File systemRegFile = new File(rootDir, ImageFs.WINEPREFIX + "/system.reg");
+        boolean changed = false;
 
         try {
             JSONObject wincomponentsJSONObject = new JSONObject(FileUtils.readString(this, "wincomponents/wincomponents.json"));
             ArrayList<String> dlls = new ArrayList<>();
-            String wincomponents = shortcut != null ? shortcut.getExtra("wincomponents", container.getWinComponents()) : container.getWinComponents();
 
             if (firstTimeBoot) {
                 for (String[] wincomponent : new KeyValueSet(wincomponents)) {
@@ -1665,27 +1701,39 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
             Iterator<String[]> oldWinComponentsIter = new KeyValueSet(container.getExtra("wincomponents", Container.FALLBACK_WINCOMPONENTS)).iterator();
 
             for (String[] wincomponent : new KeyValueSet(wincomponents)) {
-                if (wincomponent[1].equals(oldWinComponentsIter.next()[1])) continue;
+                String oldValue = oldWinComponentsIter.next()[1];
                 String identifier = wincomponent[0];
+                String component = "wincomponent-" + identifier;
                 boolean useNative = wincomponent[1].equals("1");
+                if (installManifest.isInstalled(component, wincomponent[1])) continue;
+
+                if (!useNative && !installManifest.contains(component) && wincomponent[1].equals(oldValue)) {
+                    installManifest.commit(component, wincomponent[1], null, false);
+                    continue;
+                }
 
                 if (useNative) {
-                    TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, this, "wincomponents/" + identifier + ".tzst", windowsDir, onExtractFileListener);
+                    InstallManifest.Installation installation = new InstallManifest.Installation();
+                    TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, this, "wincomponents/" + identifier + ".tzst", windowsDir, installation.record(onExtractFileListener));
+                    installManifest.commit(component, wincomponent[1], installation, false);
                 } else {
                     JSONArray dlnames = wincomponentsJSONObject.getJSONArray(identifier);
                     for (int i = 0; i < dlnames.length(); i++) {
                         String dlname = dlnames.getString(i);
                         dlls.add(!dlname.endsWith(".exe") ? dlname + ".dll" : dlname);
                     }
+                    installManifest.commit(component, wincomponent[1], null, false);
                 }
 
                 WineUtils.setWinComponentRegistryKeys(systemRegFile, identifier, useNative);
+                changed = true;
             }
 
             if (!dlls.isEmpty()) restoreOriginalDllFiles(dlls.toArray(new String[0]));
-            WineUtils.overrideWinComponentDlls(this, container, wincomponents);
+            if (changed) WineUtils.overrideWinComponentDlls(this, container, wincomponents);
         } catch (JSONException e) {
         }
+        return changed;
     }
 
     private void restoreOriginalDllFiles(final String... dlls) {
@@ -1807,6 +1855,8 @@ public class XServerDisplayActivity extends AppCompatActivity implements Navigat
         WineUtils.applySystemTweaks(this, wineInfo);
         container.putExtra("graphicsDriver", null);
         container.putExtra("desktopTheme", null);
+        driverManifest.remove("graphicsDriver");
+        installManifest.remove("desktopTheme");
         SettingsFragment.resetBox86_64Version(this);
     }
 
@@ -14,6 +14,8 @@ public class ALSAClient {
             this.byteCount = (byte)byteCount;
         }
     }
+    public static final int RING_HEADER_SIZE = 128;
+    private static final int RING_READ_POSITION = 64;
     private DataType dataType = DataType.U8;
     private byte channelCount = 2;
     private int sampleRate = 0;
@@ -21,6 +23,7 @@ public class ALSAClient {
     private int bufferSize;
     private int frameBytes;
     private ByteBuffer sharedBuffer;
+    private boolean useRingBuffer = false;
     private boolean playing = false;
     private long streamPtr = 0;
 
@@ -29,11 +32,15 @@ public class ALSAClient {
     }
 
     public void release() {
+        closeStream();
+
         if (sharedBuffer != null) {
             SysVSharedMemory.unmapSHMSegment(sharedBuffer, sharedBuffer.capacity());
             sharedBuffer = null;
         }
+    }
 
+    private void closeStream() {
         stop(streamPtr);
         close(streamPtr);
         playing = false;
@@ -43,11 +50,13 @@ public class ALSAClient {
     public void prepare() {
         position = 0;
         frameBytes = channelCount * dataType.byteCount;
-        release();
+        closeStream();
+        if (sharedBuffer == null || sharedBuffer.isReadOnly()) useRingBuffer = false;
 
         if (!isValidBufferSize()) return;
 
-        streamPtr = create(dataType.ordinal(), channelCount, sampleRate, bufferSize);
+        ByteBuffer ringBuffer = useRingBuffer ? sharedBuffer : null;
+        streamPtr = create(dataType.ordinal(), channelCount, sampleRate, bufferSize, ringBuffer);
         if (streamPtr > 0) start();
     }
 
@@ -84,7 +93,7 @@ public class ALSAClient {
             data.order(ByteOrder.BIG_ENDIAN);
         }
 
-        if (playing) {
+        if (playing && !useRingBuffer) {
             int numFrames = data.limit() / frameBytes;
             int framesWritten = write(streamPtr, data, numFrames);
             if (framesWritten > 0) position += framesWritten;
@@ -93,6 +102,7 @@ public class ALSAClient {
     }
 
     public int pointer() {
+        if (useRingBuffer && sharedBuffer != null) return sharedBuffer.order(ByteOrder.nativeOrder()).getInt(RING_READ_POSITION);
         return position;
     }
 
@@ -120,6 +130,14 @@ public class ALSAClient {
         this.sharedBuffer = sharedBuffer;
     }
 
+    public boolean isUseRingBuffer() {
+        return useRingBuffer;
+    }
+
+    public void setUseRingBuffer(boolean useRingBuffer) {
+        this.useRingBuffer = useRingBuffer;
+    }
+
     public DataType getDataType() {
         return dataType;
     }
@@ -137,7 +155,11 @@ public class ALSAClient {
     }
 
     public int getBufferSizeInBytes() {
-        return bufferSize * frameBytes;
+        return bufferSize * channelCount * dataType.byteCount;
+    }
+
+    public int getSharedBufferSize() {
+        return (useRingBuffer ? RING_HEADER_SIZE : 0) + getBufferSizeInBytes();
     }
 
     private boolean isValidBufferSize() {
@@ -148,7 +170,7 @@ public class ALSAClient {
         return (int)(((float)bufferSize / sampleRate) * 1000);
     }
 
-    private native long create(int format, byte channelCount, int sampleRate, int bufferSize);
+    private native long create(int format, byte channelCount, int sampleRate, int bufferSize, ByteBuffer ringBuffer);
 
     private native int write(long streamPtr, ByteBuffer buffer, int numFrames);
 
@@ -44,9 +44,12 @@ public class ALSARequestHandler implements RequestHandler {
                 alsaClient.setDataType(ALSAClient.DataType.values()[inputStream.readByte()]);
                 alsaClient.setSampleRate(inputStream.readInt());
                 alsaClient.setBufferSize(inputStream.readInt());
-                alsaClient.prepare();
+                alsaClient.setUseRingBuffer(requestLength > 10 && inputStream.readByte() != 0);
+                if (requestLength > 11) inputStream.skip(requestLength - 11);
+                alsaClient.release();
 
                 createSharedMemory(alsaClient, outputStream);
+                alsaClient.prepare();
                 break;
             case RequestCodes.WRITE:
                 ByteBuffer buffer = alsaClient.getSharedBuffer();
@@ -72,12 +75,13 @@ public class ALSARequestHandler implements RequestHandler {
     }
 
     private void createSharedMemory(ALSAClient alsaClient, XOutputStream outputStream) throws IOException {
-        int size = alsaClient.getBufferSizeInBytes();
+        int size = alsaClient.getSharedBufferSize();
         int fd = SysVSharedMemory.createMemoryFd("alsa-shm"+(++maxSHMemoryId), size);
 
         if (fd >= 0) {
-            ByteBuffer buffer = SysVSharedMemory.mapSHMSegment(fd, size, 0, true);
-            if (buffer != null) alsaClient.setSharedBuffer(buffer);
+            boolean readonly = !alsaClient.isUseRingBuffer();
+            ByteBuffer buffer = SysVSharedMemory.mapSHMSegment(fd, size, 0, readonly);
+            if (buffer != null) alsaClient.setSharedBuffer(readonly ? buffer.asReadOnlyBuffer() : buffer);
         }
 
         try (XStreamLock lock = outputStream.lock()) {
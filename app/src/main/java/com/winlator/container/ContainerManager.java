@@ -19,6 +19,7 @@ import org.json.JSONObject;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class ContainerManager {
@@ -26,11 +27,14 @@ public class ContainerManager {
     private int maxContainerId = 0;
     private final File homeDir;
     private final Context context;
+    private final ContentStore contentStore;
+    private static final ExecutorService seekablePatternExecutor = Executors.newSingleThreadExecutor();
 
     public ContainerManager(Context context) {
         this.context = context;
         File rootDir = ImageFs.find(context).getRootDir();
         homeDir = new File(rootDir, "home");
+        contentStore = new ContentStore(rootDir);
         loadContainers();
     }
 
@@ -109,7 +113,7 @@ public class ContainerManager {
             boolean isMainWineVersion = !data.has("wineVersion") || WineInfo.isMainWineVersion(data.getString("wineVersion"));
             if (!isMainWineVersion) container.setWineVersion(data.getString("wineVersion"));
 
-            if (!extractContainerPatternFile(container.getWineVersion(), containerDir, null)) {
+            if (!installContainerPattern(container.getWineVersion(), containerDir)) {
                 FileUtils.delete(containerDir);
                 return null;
             }
@@ -138,7 +142,7 @@ public class ContainerManager {
         File dstDir = new File(homeDir, ImageFs.USER+"-"+id);
         if (!dstDir.mkdirs()) return;
 
-        if (!FileUtils.copy(srcContainer.getRootDir(), dstDir, (file) -> FileUtils.chmod(file, 0771))) {
+        if (!ContentStore.cloneTree(srcContainer.getRootDir(), dstDir, (file) -> FileUtils.chmod(file, 0771))) {
             FileUtils.delete(dstDir);
             return;
         }
@@ -212,9 +216,84 @@ public class ContainerManager {
         }
     }
 
+    private File getContainerPatternFile(String wineVersion) {
+        File installedWineDir = ImageFs.find(context).getInstalledWineDir();
+        WineInfo wineInfo = WineInfo.fromIdentifier(context, wineVersion);
+        String suffix = wineInfo.fullVersion()+"-"+wineInfo.getArch();
+        return new File(installedWineDir, "container-pattern-"+suffix+".tzst");
+    }
+
+    private File getContainerPatternSource(String wineVersion) {
+        return WineInfo.isMainWineVersion(wineVersion) ? new File(context.getApplicationInfo().sourceDir) : getContainerPatternFile(wineVersion);
+    }
+
+    private String getStorePatternName(String wineVersion) {
+        return WineInfo.isMainWineVersion(wineVersion) ? "main" : wineVersion;
+    }
+
+    private File getStorePatternDir(String wineVersion) {
+        return contentStore.getPatternDir(getStorePatternName(wineVersion), getContainerPatternSource(wineVersion).lastModified());
+    }
+
+    private boolean installContainerPattern(String wineVersion, File containerDir) {
+        prepareSeekableContainerPatternFile(wineVersion);
+        String name = getStorePatternName(wineVersion);
+        File patternDir = getStorePatternDir(wineVersion);
+
+        if (patternDir == null) {
+            patternDir = contentStore.preparePatternDir(name);
+            if (patternDir == null || !extractContainerPatternFile(wineVersion, patternDir, null)) {
+                if (patternDir != null) FileUtils.delete(patternDir);
+                return extractContainerPatternFile(wineVersion, containerDir, null);
+            }
+            contentStore.commitPatternDir(name);
+        }
+
+        return ContentStore.cloneTree(patternDir, containerDir, null);
+    }
+
+    private File getSeekableContainerPatternFile(String wineVersion) {
+        String name = WineInfo.isMainWineVersion(wineVersion) ? "main" : wineVersion;
+        return new File(ImageFs.find(context).getRootDir(), ImageFs.CACHE_PATH+"/container-pattern-"+name+".sarc");
+    }
+
+    private boolean isSeekableContainerPatternFileReady(String wineVersion) {
+        File seekableFile = getSeekableContainerPatternFile(wineVersion);
+        return seekableFile.isFile() && seekableFile.lastModified() >= getContainerPatternSource(wineVersion).lastModified();
+    }
+
+    private void prepareSeekableContainerPatternFile(final String wineVersion) {
+        seekablePatternExecutor.execute(() -> {
+            if (isSeekableContainerPatternFileReady(wineVersion)) return;
+            File seekableFile = getSeekableContainerPatternFile(wineVersion);
+            File parent = seekableFile.getParentFile();
+            if (!parent.isDirectory()) parent.mkdirs();
+
+            if (WineInfo.isMainWineVersion(wineVersion)) {
+                TarCompressorUtils.createSeekable(TarCompressorUtils.Type.ZSTD, context, "container_pattern.tzst", seekableFile);
+            }
+            else TarCompressorUtils.createSeekable(TarCompressorUtils.Type.ZSTD, getContainerPatternFile(wineVersion), seekableFile);
+        });
+    }
+
+    private boolean extractContainerPatternFile(String wineVersion, File containerDir, OnExtractFileListener onExtractFileListener, boolean seekable) {
+        if (seekable) {
+            if (isSeekableContainerPatternFileReady(wineVersion)) {
+                if (TarCompressorUtils.extractSeekable(getSeekableContainerPatternFile(wineVersion), containerDir, onExtractFileListener)) return true;
+            }
+            else prepareSeekableContainerPatternFile(wineVersion);
+        }
+
+        if (WineInfo.isMainWineVersion(wineVersion)) {
+            return TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, context, "container_pattern.tzst", containerDir, onExtractFileListener);
+        }
+        else return TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, getContainerPatternFile(wineVersion), containerDir, onExtractFileListener);
+    }
+
     public boolean extractContainerPatternFile(String wineVersion, File containerDir, OnExtractFileListener onExtractFileListener) {
+        boolean seekable = onExtractFileListener != null;
         if (WineInfo.isMainWineVersion(wineVersion)) {
-            boolean result = TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, context, "container_pattern.tzst", containerDir, onExtractFileListener);
+            boolean result = extractContainerPatternFile(wineVersion, containerDir, onExtractFileListener, seekable);
 
             if (result) {
                 try {
@@ -229,13 +308,7 @@ public class ContainerManager {
 
             return result;
         }
-        else {
-            File installedWineDir = ImageFs.find(context).getInstalledWineDir();
-            WineInfo wineInfo = WineInfo.fromIdentifier(context, wineVersion);
-            String suffix = wineInfo.fullVersion()+"-"+wineInfo.getArch();
-            File file = new File(installedWineDir, "container-pattern-"+suffix+".tzst");
-            return TarCompressorUtils.extract(TarCompressorUtils.Type.ZSTD, file, containerDir, onExtractFileListener);
-        }
+        else return extractContainerPatternFile(wineVersion, containerDir, onExtractFileListener, seekable);
     }
 
     public boolean extractGraphicsDriverFiles(String driverVersion, File containerDir, OnExtractFileListener onExtractFileListener) {
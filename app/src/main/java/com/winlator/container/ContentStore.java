@@ -0,0 +1,90 @@
+package com.winlator.container;
+
+import com.winlator.core.Callback;
+import com.winlator.core.FileUtils;
+
+import java.io.File;
+import java.util.Stack;
+
+public class ContentStore {
+    private final File storeDir;
+
+    public static class Usage {
+        public long totalBytes;
+        public long sharedBytes;
+    }
+
+    static {
+        System.loadLibrary("winlator");
+    }
+
+    public ContentStore(File rootDir) {
+        storeDir = new File(rootDir, "/home/.store");
+    }
+
+    public File getPatternDir(String name, long sourceTime) {
+        File completeFile = new File(storeDir, "pattern-"+name+".complete");
+        if (completeFile.isFile() && completeFile.lastModified() >= sourceTime) return new File(storeDir, "pattern-"+name);
+        return null;
+    }
+
+    public File preparePatternDir(String name) {
+        new File(storeDir, "pattern-"+name+".complete").delete();
+        File patternDir = new File(storeDir, "pattern-"+name);
+        FileUtils.delete(patternDir);
+        return patternDir.mkdirs() ? patternDir : null;
+    }
+
+    public void commitPatternDir(String name) {
+        FileUtils.writeString(new File(storeDir, "pattern-"+name+".complete"), "");
+    }
+
+    public static boolean cloneTree(File srcFile, File dstFile, Callback<File> callback) {
+        if (FileUtils.isSymlink(srcFile)) {
+            FileUtils.symlink(FileUtils.readSymlink(srcFile), dstFile.getPath());
+            return true;
+        }
+
+        if (srcFile.isDirectory()) {
+            if (!dstFile.exists() && !dstFile.mkdirs()) return false;
+            if (callback != null) callback.call(dstFile);
+
+            String[] filenames = srcFile.list();
+            if (filenames != null) {
+                for (String filename : filenames) {
+                    if (!cloneTree(new File(srcFile, filename), new File(dstFile, filename), callback)) return false;
+                }
+            }
+            return true;
+        }
+        else if (cloneFile(srcFile.getPath(), dstFile.getPath())) {
+            if (callback != null) callback.call(dstFile);
+            return true;
+        }
+        else return FileUtils.copy(srcFile, dstFile, callback);
+    }
+
+    public static Usage getUsage(File file) {
+        Usage usage = new Usage();
+        Stack<File> stack = new Stack<>();
+        stack.push(file);
+
+        while (!stack.isEmpty()) {
+            File current = stack.pop();
+            if (FileUtils.isSymlink(current)) continue;
+            if (current.isDirectory()) {
+                File[] files = current.listFiles();
+                if (files != null) for (File f : files) stack.push(f);
+            }
+            else {
+                usage.totalBytes += current.length();
+                usage.sharedBytes += getSharedBytes(current.getPath());
+            }
+        }
+        return usage;
+    }
+
+    private static native boolean cloneFile(String srcPath, String dstPath);
+
+    private static native long getSharedBytes(String path);
+}
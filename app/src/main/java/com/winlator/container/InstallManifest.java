@@ -0,0 +1,107 @@
+package com.winlator.container;
+
+import android.util.Log;
+
+import com.winlator.core.FileUtils;
+import com.winlator.core.OnExtractFileListener;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+public class InstallManifest {
+    private static final String TAG = "InstallManifest";
+    private final File file;
+    private JSONObject data;
+
+    public static class Installation {
+        private final ArrayList<File> files = new ArrayList<>();
+
+        public OnExtractFileListener record(OnExtractFileListener onExtractFileListener) {
+            return (file, size) -> {
+                if (onExtractFileListener != null) file = onExtractFileListener.onExtractFile(file, size);
+                if (file != null) add(file);
+                return file;
+            };
+        }
+
+        public synchronized void add(File file) {
+            files.add(file);
+        }
+    }
+
+    public InstallManifest(File file) {
+        this.file = file;
+        try {
+            data = file.isFile() ? new JSONObject(FileUtils.readString(file)) : new JSONObject();
+        }
+        catch (JSONException e) {
+            data = new JSONObject();
+        }
+    }
+
+    public synchronized boolean contains(String component) {
+        return data.has(component);
+    }
+
+    public synchronized boolean isInstalled(String component, String id) {
+        JSONObject entry = data.optJSONObject(component);
+        if (entry == null || !id.equals(entry.optString("id"))) return false;
+
+        JSONArray files = entry.optJSONArray("files");
+        if (files == null) return true;
+        for (int i = 0; i < files.length(); i++) {
+            JSONArray fileInfo = files.optJSONArray(i);
+            File file = new File(fileInfo.optString(0));
+            if (file.length() != fileInfo.optLong(1) || file.lastModified() != fileInfo.optLong(2)) return false;
+        }
+        return true;
+    }
+
+    public synchronized void commit(String component, String id, Installation installation, boolean removeStaleFiles) {
+        try {
+            HashSet<String> paths = new HashSet<>();
+            JSONArray files = new JSONArray();
+            if (installation != null) {
+                for (File file : installation.files) {
+                    if (!file.isFile() || !paths.add(file.getPath())) continue;
+                    JSONArray fileInfo = new JSONArray();
+                    fileInfo.put(file.getPath());
+                    fileInfo.put(file.length());
+                    fileInfo.put(file.lastModified());
+                    files.put(fileInfo);
+                }
+            }
+
+            JSONObject oldEntry = data.optJSONObject(component);
+            JSONArray oldFiles = oldEntry != null ? oldEntry.optJSONArray("files") : null;
+            if (removeStaleFiles && oldFiles != null) {
+                for (int i = 0; i < oldFiles.length(); i++) {
+                    String path = oldFiles.optJSONArray(i).optString(0);
+                    if (!paths.contains(path)) FileUtils.delete(new File(path));
+                }
+            }
+
+            JSONObject entry = new JSONObject();
+            entry.put("id", id);
+            entry.put("files", files);
+            data.put(component, entry);
+            save();
+        }
+        catch (JSONException e) {
+            Log.e(TAG, "Error updating install manifest: " + file.getPath(), e);
+        }
+    }
+
+    public synchronized void remove(String component) {
+        if (data.remove(component) != null) save();
+    }
+
+    private void save() {
+        FileUtils.writeString(file, data.toString());
+    }
+}
@@ -8,11 +8,13 @@ import androidx.annotation.NonNull;
 import com.google.android.material.progressindicator.CircularProgressIndicator;
 import com.winlator.R;
 import com.winlator.container.Container;
+import com.winlator.container.ContentStore;
 import com.winlator.core.Callback;
 import com.winlator.core.FileUtils;
 import com.winlator.core.StringUtils;
 
 import java.io.File;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class StorageInfoDialog extends ContentDialog {
@@ -34,6 +36,7 @@ public class StorageInfoDialog extends ContentDialog {
         final TextView tvDriveCSize = findViewById(R.id.TVDriveCSize);
         final TextView tvCacheSize = findViewById(R.id.TVCacheSize);
         final TextView tvTotalSize = findViewById(R.id.TVTotalSize);
+        final TextView tvSharedSize = findViewById(R.id.TVSharedSize);
         final TextView tvUsedSpace = findViewById(R.id.TVUsedSpace);
         final CircularProgressIndicator circularProgressIndicator = findViewById(R.id.CircularProgressIndicator);
 
@@ -74,6 +77,11 @@ public class StorageInfoDialog extends ContentDialog {
             onAddSize.call(size);
         });
 
+        Executors.newSingleThreadExecutor().execute(() -> {
+            ContentStore.Usage usage = ContentStore.getUsage(rootDir);
+            activity.runOnUiThread(() -> tvSharedSize.setText(StringUtils.formatBytes(usage.sharedBytes)));
+        });
+
         ((TextView)findViewById(R.id.BTCancel)).setText(R.string.clear_cache);
         setOnCancelCallback(() -> {
             FileUtils.clear(cacheDir);
@@ -94,6 +94,7 @@ public abstract class FileUtils {
     }
 
     public static boolean write(File file, byte[] data) {
+        unlinkIfShared(file);
         try (OutputStream os = new FileOutputStream(file)) {
             os.write(data, 0, data.length);
             return true;
@@ -130,6 +131,19 @@ public abstract class FileUtils {
         }
     }
 
+    public static long getLinkCount(File file) {
+        try {
+            return Os.lstat(file.getAbsolutePath()).st_nlink;
+        }
+        catch (ErrnoException e) {
+            return 0;
+        }
+    }
+
+    public static void unlinkIfShared(File file) {
+        if (getLinkCount(file) > 1) file.delete();
+    }
+
     public static boolean isSymlink(File file) {
         return Files.isSymbolicLink(file.toPath());
     }
@@ -185,6 +199,7 @@ public abstract class FileUtils {
         } else {
             File parent = dstFile.getParentFile();
             if (!srcFile.exists() || (parent != null && !parent.exists() && !parent.mkdirs())) return false;
+            unlinkIfShared(dstFile);
 
             try (FileChannel inChannel = (new FileInputStream(srcFile)).getChannel();
                  FileChannel outChannel = (new FileOutputStream(dstFile)).getChannel()) {
@@ -221,6 +236,7 @@ public abstract class FileUtils {
             } else {
                 File parent = dstFile.getParentFile();
                 if (!sourceFile.exists() || (parent != null && !parent.exists() && !parent.mkdirs())) return false;
+                unlinkIfShared(dstFile);
 
                 try (FileChannel inChannel = (new FileInputStream(sourceFile)).getChannel();
                      FileChannel outChannel = (new FileOutputStream(dstFile)).getChannel()) {
@@ -282,6 +298,7 @@ public abstract class FileUtils {
             if (dstFile.isDirectory()) dstFile = new File(dstFile, FileUtils.getName(assetFile));
             File parent = dstFile.getParentFile();
             if (!parent.isDirectory()) parent.mkdirs();
+            unlinkIfShared(dstFile);
             try (InputStream inStream = context.getAssets().open(assetFile);
                  BufferedOutputStream outStream = new BufferedOutputStream(new FileOutputStream(dstFile), StreamUtils.BUFFER_SIZE)) {
                 StreamUtils.copy(inStream, outStream);
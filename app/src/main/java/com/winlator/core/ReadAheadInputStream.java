@@ -0,0 +1,102 @@
+package com.winlator.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+public class ReadAheadInputStream extends InputStream {
+    private static final byte[] END_OF_STREAM = new byte[0];
+    private final InputStream source;
+    private final ArrayBlockingQueue<byte[]> blocks;
+    private final Thread readerThread;
+    private volatile IOException exception;
+    private volatile boolean closed = false;
+    private byte[] block;
+    private int position;
+
+    public ReadAheadInputStream(InputStream source) {
+        this(source, StreamUtils.BUFFER_SIZE * 4, 16);
+    }
+
+    public ReadAheadInputStream(InputStream source, int blockSize, int maxBlocks) {
+        this.source = source;
+        blocks = new ArrayBlockingQueue<>(maxBlocks);
+        readerThread = new Thread(() -> readBlocks(blockSize), "ReadAheadInputStream");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    private void readBlocks(int blockSize) {
+        try {
+            while (!closed) {
+                byte[] buffer = new byte[blockSize];
+                int length = 0;
+                int amountRead;
+                while (length < blockSize && (amountRead = source.read(buffer, length, blockSize - length)) != -1) {
+                    length += amountRead;
+                }
+                if (length == 0) break;
+                blocks.put(length < blockSize ? Arrays.copyOf(buffer, length) : buffer);
+                if (length < blockSize) break;
+            }
+        }
+        catch (IOException e) {
+            exception = e;
+        }
+        catch (InterruptedException e) {}
+
+        try {
+            if (!closed) blocks.put(END_OF_STREAM);
+        }
+        catch (InterruptedException e) {}
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (block == END_OF_STREAM) return false;
+        if (block == null || position == block.length) {
+            try {
+                block = blocks.take();
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            position = 0;
+            if (block == END_OF_STREAM) {
+                if (exception != null) throw exception;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextBlock() ? block[position++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!nextBlock()) return -1;
+        int length = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        while (readerThread.isAlive()) {
+            readerThread.interrupt();
+            blocks.clear();
+            try {
+                readerThread.join(100);
+            }
+            catch (InterruptedException e) {}
+        }
+        blocks.clear();
+        source.close();
+    }
+}
@@ -0,0 +1,214 @@
+package com.winlator.core;
+
+import com.github.luben.zstd.Zstd;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+public class SeekableArchive implements Closeable {
+    private static final int MAGIC = 0x57534b41;
+    private static final byte VERSION = 1;
+    private static final byte TYPE_FILE = 0;
+    private static final byte TYPE_DIRECTORY = 1;
+    private static final byte TYPE_SYMLINK = 2;
+    private final RandomAccessFile file;
+    private final ArrayList<Entry> entries = new ArrayList<>();
+    private final HashMap<String, Entry> entriesByName = new HashMap<>();
+
+    public static class Entry {
+        public final String name;
+        public final byte type;
+        public final String linkName;
+        public final long offset;
+        public final int compressedSize;
+        public final long size;
+
+        private Entry(String name, byte type, String linkName, long offset, int compressedSize, long size) {
+            this.name = name;
+            this.type = type;
+            this.linkName = linkName;
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        public boolean isDirectory() {
+            return type == TYPE_DIRECTORY;
+        }
+
+        public boolean isSymbolicLink() {
+            return type == TYPE_SYMLINK;
+        }
+    }
+
+    private SeekableArchive(RandomAccessFile file) throws IOException {
+        this.file = file;
+        long length = file.length();
+        if (length < 17) throw new IOException("Invalid seekable archive.");
+
+        file.seek(0);
+        if (file.readInt() != MAGIC || file.readByte() != VERSION) throw new IOException("Invalid seekable archive.");
+
+        file.seek(length - 12);
+        long indexOffset = file.readLong();
+        if (file.readInt() != MAGIC) throw new IOException("Invalid seekable archive.");
+
+        file.seek(indexOffset);
+        int count = file.readInt();
+        entries.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            byte type = file.readByte();
+            String name = file.readUTF();
+            String linkName = type == TYPE_SYMLINK ? file.readUTF() : null;
+            long offset = file.readLong();
+            int compressedSize = file.readInt();
+            long size = file.readLong();
+            Entry entry = new Entry(name, type, linkName, offset, compressedSize, size);
+            entries.add(entry);
+            entriesByName.put(name, entry);
+        }
+    }
+
+    public static SeekableArchive open(File source) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(source, "r");
+        try {
+            return new SeekableArchive(file);
+        }
+        catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public static boolean create(InputStream source, File destination, int level) {
+        File tmpFile = new File(destination.getPath()+".tmp");
+        ArrayList<Entry> entries = new ArrayList<>();
+
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(source);
+             DataOutputStream outStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), StreamUtils.BUFFER_SIZE))) {
+            outStream.writeInt(MAGIC);
+            outStream.writeByte(VERSION);
+            long position = 5;
+
+            TarArchiveEntry tarEntry;
+            while ((tarEntry = tar.getNextTarEntry()) != null) {
+                if (!tar.canReadEntryData(tarEntry)) continue;
+                String name = tarEntry.getName();
+
+                if (tarEntry.isDirectory()) {
+                    entries.add(new Entry(name, TYPE_DIRECTORY, null, 0, 0, 0));
+                }
+                else if (tarEntry.isSymbolicLink()) {
+                    entries.add(new Entry(name, TYPE_SYMLINK, tarEntry.getLinkName(), 0, 0, 0));
+                }
+                else {
+                    byte[] data = new byte[(int)tarEntry.getSize()];
+                    IOUtils.readFully(tar, data);
+                    byte[] compressed = Zstd.compress(data, level);
+                    outStream.write(compressed);
+                    entries.add(new Entry(name, TYPE_FILE, null, position, compressed.length, data.length));
+                    position += compressed.length;
+                }
+            }
+
+            outStream.writeInt(entries.size());
+            for (Entry entry : entries) {
+                outStream.writeByte(entry.type);
+                outStream.writeUTF(entry.name);
+                if (entry.type == TYPE_SYMLINK) outStream.writeUTF(entry.linkName);
+                outStream.writeLong(entry.offset);
+                outStream.writeInt(entry.compressedSize);
+                outStream.writeLong(entry.size);
+            }
+
+            outStream.writeLong(position);
+            outStream.writeInt(MAGIC);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            tmpFile.delete();
+            return false;
+        }
+
+        return tmpFile.renameTo(destination);
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public Entry getEntry(String name) {
+        return entriesByName.get(name);
+    }
+
+    public synchronized byte[] read(Entry entry) throws IOException {
+        if (entry.type != TYPE_FILE) return null;
+        byte[] compressed = new byte[entry.compressedSize];
+        file.seek(entry.offset);
+        file.readFully(compressed);
+        return Zstd.decompress(compressed, (int)entry.size);
+    }
+
+    public boolean extractEntry(String name, File destination) {
+        Entry entry = entriesByName.get(name);
+        if (entry == null) return false;
+        File parent = destination.getParentFile();
+        if (parent != null && !parent.isDirectory()) parent.mkdirs();
+        return extractEntry(entry, destination);
+    }
+
+    private boolean extractEntry(Entry entry, File file) {
+        if (entry.isDirectory()) {
+            if (!file.isDirectory()) file.mkdirs();
+        }
+        else if (entry.isSymbolicLink()) {
+            FileUtils.symlink(entry.linkName, file.getAbsolutePath());
+        }
+        else {
+            FileUtils.unlinkIfShared(file);
+            try (FileOutputStream outStream = new FileOutputStream(file)) {
+                outStream.write(read(entry));
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        FileUtils.chmod(file, 0771);
+        return true;
+    }
+
+    public boolean extract(File destination, OnExtractFileListener onExtractFileListener) {
+        for (Entry entry : entries) {
+            File file = new File(destination, entry.name);
+
+            if (onExtractFileListener != null) {
+                file = onExtractFileListener.onExtractFile(file, entry.size);
+                if (file == null) continue;
+            }
+
+            if (!extractEntry(entry, file)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
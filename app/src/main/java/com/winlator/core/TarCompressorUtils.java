@@ -4,6 +4,8 @@ import android.content.Context;
 import android.net.Uri;
 import android.util.Log;
 
+import com.github.luben.zstd.ZstdOutputStream;
+
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
@@ -13,7 +15,7 @@ import org.apache.commons.compress.archivers.tar.TarConstants;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
 import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
-import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -24,9 +26,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class TarCompressorUtils {
     public enum Type {XZ, ZSTD}
+    private static final int MAX_BUFFERED_ENTRY_SIZE = 1024 * 1024;
+    private static final int MAX_PENDING_WRITES = 1024;
 
     // Interface to define the exclusion filter
     public interface ExclusionFilter {
@@ -151,10 +162,13 @@ public abstract class TarCompressorUtils {
 
     private static boolean extract(Type type, InputStream source, File destination, OnExtractFileListener onExtractFileListener) {
         if (source == null) return false;
-        try (InputStream inStream = getCompressorInputStream(type, source);
+        ThreadPoolExecutor writerPool = newWriterPool();
+        HashMap<String, Future<?>> pendingWrites = new HashMap<>();
+        AtomicBoolean success = new AtomicBoolean(true);
+        try (InputStream inStream = new ReadAheadInputStream(getCompressorInputStream(type, source));
              ArchiveInputStream tar = new TarArchiveInputStream(inStream)) {
             TarArchiveEntry entry;
-            while ((entry = (TarArchiveEntry)tar.getNextEntry()) != null) {
+            while ((entry = (TarArchiveEntry)tar.getNextEntry()) != null && success.get()) {
                 if (!tar.canReadEntryData(entry)) continue;
                 File file = new File(destination, entry.getName());
 
@@ -163,6 +177,7 @@ public abstract class TarCompressorUtils {
                     if (file == null) continue;
                 }
 
+                awaitPendingWrite(pendingWrites, file);
                 if (entry.isDirectory()) {
                     if (!file.isDirectory()) file.mkdirs();
                 }
@@ -170,19 +185,116 @@ public abstract class TarCompressorUtils {
                     if (entry.isSymbolicLink()) {
                         FileUtils.symlink(entry.getLinkName(), file.getAbsolutePath());
                     }
+                    else if (entry.getSize() <= MAX_BUFFERED_ENTRY_SIZE) {
+                        final File outputFile = file;
+                        final byte[] data = new byte[(int)entry.getSize()];
+                        IOUtils.readFully(tar, data);
+                        if (pendingWrites.size() >= MAX_PENDING_WRITES) pendingWrites.values().removeIf(Future::isDone);
+                        pendingWrites.put(outputFile.getPath(), writerPool.submit(() -> {
+                            FileUtils.unlinkIfShared(outputFile);
+                            try (FileOutputStream outStream = new FileOutputStream(outputFile)) {
+                                outStream.write(data);
+                            }
+                            catch (IOException e) {
+                                success.set(false);
+                            }
+                            FileUtils.chmod(outputFile, 0771);
+                        }));
+                        continue;
+                    }
                     else {
+                        FileUtils.unlinkIfShared(file);
                         try (BufferedOutputStream outStream = new BufferedOutputStream(new FileOutputStream(file), StreamUtils.BUFFER_SIZE)) {
-                            if (!StreamUtils.copy(tar, outStream)) return false;
+                            if (!StreamUtils.copy(tar, outStream)) success.set(false);
                         }
                     }
                 }
 
                 FileUtils.chmod(file, 0771);
             }
-            return true;
         }
         catch (IOException e) {
             e.printStackTrace();
+            success.set(false);
+        }
+        finally {
+            awaitWriterPool(writerPool);
+        }
+        return success.get();
+    }
+
+    private static ThreadPoolExecutor newWriterPool() {
+        int numThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        return new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(numThreads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static void awaitPendingWrite(HashMap<String, Future<?>> pendingWrites, File file) {
+        Future<?> pendingWrite = pendingWrites.remove(file.getPath());
+        if (pendingWrite == null) return;
+        try {
+            pendingWrite.get();
+        }
+        catch (ExecutionException e) {}
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitWriterPool(ThreadPoolExecutor writerPool) {
+        writerPool.shutdown();
+        try {
+            while (!writerPool.awaitTermination(1, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e) {
+            writerPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static boolean createSeekable(Type type, Context context, String assetFile, File destination) {
+        try {
+            return createSeekable(type, context.getAssets().open(assetFile), destination);
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static boolean createSeekable(Type type, File source, File destination) {
+        if (source == null || !source.isFile()) return false;
+        try {
+            return createSeekable(type, new BufferedInputStream(new FileInputStream(source), StreamUtils.BUFFER_SIZE), destination);
+        }
+        catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static boolean createSeekable(Type type, InputStream source, File destination) {
+        try (InputStream inStream = getCompressorInputStream(type, source)) {
+            return SeekableArchive.create(inStream, destination, 3);
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static boolean extractSeekable(File source, File destination, OnExtractFileListener onExtractFileListener) {
+        if (source == null || !source.isFile()) return false;
+        try (SeekableArchive archive = SeekableArchive.open(source)) {
+            return archive.extract(destination, onExtractFileListener);
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static boolean extractSeekableEntry(File source, String entryName, File destination) {
+        if (source == null || !source.isFile()) return false;
+        try (SeekableArchive archive = SeekableArchive.open(source)) {
+            return archive.extractEntry(entryName, destination);
+        }
+        catch (IOException e) {
             return false;
         }
     }
@@ -202,7 +314,9 @@ public abstract class TarCompressorUtils {
             return new XZCompressorOutputStream(new BufferedOutputStream(new FileOutputStream(destination), StreamUtils.BUFFER_SIZE), level);
         }
         else if (type == Type.ZSTD) {
-            return new ZstdCompressorOutputStream(new BufferedOutputStream(new FileOutputStream(destination), StreamUtils.BUFFER_SIZE), level);
+            ZstdOutputStream outStream = new ZstdOutputStream(new BufferedOutputStream(new FileOutputStream(destination), StreamUtils.BUFFER_SIZE), level);
+            outStream.setWorkers(Runtime.getRuntime().availableProcessors());
+            return outStream;
         }
         return null;
     }
@@ -271,6 +385,7 @@ public abstract class TarCompressorUtils {
                     if (entry.isSymbolicLink()) {
                         FileUtils.symlink(entry.getLinkName(), file.getAbsolutePath());
                     } else {
+                        FileUtils.unlinkIfShared(file);
                         try (BufferedOutputStream outStream = new BufferedOutputStream(new FileOutputStream(file), StreamUtils.BUFFER_SIZE)) {
                             if (!StreamUtils.copy(tar, outStream)) return false;
                         }
@@ -9,44 +9,60 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 
 public class WineRegistryEditor implements Closeable {
+    private static final HashMap<String, SoftReference<Registry>> cachedRegistries = new HashMap<>();
     private final File file;
-    private final File cloneFile;
+    private final Registry registry;
     private boolean modified = false;
     private boolean createKeyIfNotExist = true;
-    private int lastParentKeyPosition = 0;
-    private String lastParentKey = "";
-
-    public static class Location {
-        public final int offset;
-        public final int start;
-        public final int end;
-
-        public Location(int offset, int start, int end) {
-            this.offset = offset;
-            this.start = start;
-            this.end = end;
+
+    private static class RegistryKey {
+        private final String name;
+        private final String header;
+        private final ArrayList<String> metadata = new ArrayList<>();
+        private final LinkedHashMap<String, String> values = new LinkedHashMap<>();
+
+        private RegistryKey(String name, String header) {
+            this.name = name;
+            this.header = header;
+        }
+    }
+
+    private static class Registry {
+        private String header = "";
+        private final ArrayList<RegistryKey> keys = new ArrayList<>();
+        private final HashMap<String, RegistryKey> keysByName = new HashMap<>();
+        private long lastModified;
+        private long length;
+
+        private RegistryKey getKey(String name) {
+            return keysByName.get(name.toLowerCase(Locale.ENGLISH));
         }
 
-        public int length() {
-            return end - start;
+        private void addKey(int index, RegistryKey key) {
+            keys.add(index, key);
+            keysByName.put(key.name.toLowerCase(Locale.ENGLISH), key);
         }
     }
 
     public WineRegistryEditor(File file) {
         this.file = file;
-        cloneFile = FileUtils.createTempFile(file.getParentFile(), FileUtils.getBasename(file.getPath()));
-        if (!file.isFile()) {
-            try {
-                cloneFile.createNewFile();
-            }
-            catch (IOException e) {}
+        Registry registry = null;
+        synchronized (cachedRegistries) {
+            SoftReference<Registry> reference = cachedRegistries.remove(file.getPath());
+            if (reference != null) registry = reference.get();
         }
-        else FileUtils.copy(file, cloneFile);
+
+        if (registry == null || registry.lastModified != file.lastModified() || registry.length != file.length()) registry = parse(file);
+        this.registry = registry;
     }
 
     private static String escape(String str) {
@@ -57,81 +73,131 @@ public class WineRegistryEditor implements Closeable {
         return str.replace("\\\"", "\"").replace("\\\\", "\\");
     }
 
-    private static boolean lineHasName(String line) {
-        int index;
-        return (index = line.indexOf('"')) != -1 &&
-               (index = line.indexOf('"', index)) != -1 &&
-               (index = line.indexOf('=', index)) != -1;
+    private static String getValueName(String name) {
+        return name != null ? "\""+escape(name)+"\"" : "@";
     }
 
-    @Override
-    public void close() {
-        if (modified && cloneFile.exists()) {
-            cloneFile.renameTo(file);
+    private static int indexOfValueData(String line) {
+        if (line.startsWith("@")) return line.startsWith("@=") ? 2 : -1;
+        for (int i = 1; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            }
+            else if (c == '"') {
+                return i + 1 < line.length() && line.charAt(i + 1) == '=' ? i + 2 : -1;
+            }
         }
-        else cloneFile.delete();
+        return -1;
     }
 
-    private void resetLastParentKeyPositionIfNeed(String newKey) {
-        int lastIndex = newKey.lastIndexOf("\\");
-        if (lastIndex == -1) {
-            lastParentKeyPosition = 0;
-            lastParentKey = "";
-            return;
-        }
+    private static Registry parse(File file) {
+        Registry registry = new Registry();
+        if (!file.isFile()) return registry;
 
-        String parentKey = newKey.substring(0, lastIndex);
-        if (!parentKey.equals(lastParentKey)) lastParentKeyPosition = 0;
-        lastParentKey = parentKey;
-    }
+        StringBuilder header = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file), StreamUtils.BUFFER_SIZE)) {
+            RegistryKey key = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("[")) {
+                    int end = line.lastIndexOf(']');
+                    key = new RegistryKey(line.substring(1, end != -1 ? end : line.length()), line);
+                    registry.addKey(registry.keys.size(), key);
+                }
+                else if (key == null) {
+                    header.append(line).append('\n');
+                }
+                else if (line.startsWith("\"") || line.startsWith("@")) {
+                    int index = indexOfValueData(line);
+                    if (index == -1) {
+                        key.metadata.add(line);
+                        continue;
+                    }
 
-    public void setCreateKeyIfNotExist(boolean createKeyIfNotExist) {
-        this.createKeyIfNotExist = createKeyIfNotExist;
-    }
+                    String name = line.substring(0, index - 1);
+                    StringBuilder data = new StringBuilder(line.substring(index));
+                    if (line.startsWith("hex", index)) {
+                        while (data.charAt(data.length() - 1) == '\\' && (line = reader.readLine()) != null) data.append('\n').append(line);
+                    }
+                    key.values.put(name, data.toString());
+                }
+                else if (!line.isEmpty()) key.metadata.add(line);
+            }
+        }
+        catch (IOException e) {}
 
-    private Location createKey(String key) {
-        lastParentKeyPosition = 0;
-        Location location = getParentKeyLocation(key);
-        boolean success = false;
-        int offset = 0;
-        int totalLength = 0;
+        registry.header = header.toString();
+        registry.lastModified = file.lastModified();
+        registry.length = file.length();
+        return registry;
+    }
 
-        char[] buffer = new char[StreamUtils.BUFFER_SIZE];
+    private boolean write() {
         File tempFile = FileUtils.createTempFile(file.getParentFile(), FileUtils.getBasename(file.getPath()));
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE);
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile), StreamUtils.BUFFER_SIZE)) {
-
-            int length;
-            for (int i = 0, end = location != null ? location.end+1 : (int)cloneFile.length(); i < end; i += length) {
-                length = Math.min(buffer.length, end - i);
-                reader.read(buffer, 0, length);
-                writer.write(buffer, 0, length);
-                totalLength += length;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile), StreamUtils.BUFFER_SIZE)) {
+            writer.write(registry.header);
+            for (RegistryKey key : registry.keys) {
+                writer.write(key.header);
+                writer.write('\n');
+                for (String line : key.metadata) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+                for (Map.Entry<String, String> entry : key.values.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write('=');
+                    writer.write(entry.getValue());
+                    writer.write('\n');
+                }
+                writer.write('\n');
             }
+        }
+        catch (IOException e) {
+            tempFile.delete();
+            return false;
+        }
 
-            offset = totalLength;
-            long ticks1601To1970 = 86400L * (369 * 365 + 89) * 10000000;
-            long currentTime = System.currentTimeMillis() + ticks1601To1970;
-            String content = "\n["+escape(key)+"] "+((currentTime - ticks1601To1970) / 1000) +
-                              String.format(Locale.ENGLISH, "\n#time=%x%08x", currentTime >> 32, (int)currentTime)+"\n";
-            writer.write(content);
-            totalLength += content.length() - 1;
+        return tempFile.renameTo(file);
+    }
 
-            while ((length = reader.read(buffer)) != -1) writer.write(buffer, 0, length);
-            success = true;
-        }
-        catch (IOException e) {}
+    @Override
+    public void close() {
+        if (modified && !write()) return;
 
-        if (success) {
-            modified = true;
-            tempFile.renameTo(cloneFile);
-            return new Location(offset, totalLength, totalLength);
+        registry.lastModified = file.lastModified();
+        registry.length = file.length();
+        synchronized (cachedRegistries) {
+            cachedRegistries.put(file.getPath(), new SoftReference<>(registry));
         }
-        else {
-            tempFile.delete();
-            return null;
+    }
+
+    public void setCreateKeyIfNotExist(boolean createKeyIfNotExist) {
+        this.createKeyIfNotExist = createKeyIfNotExist;
+    }
+
+    private RegistryKey createKey(String name) {
+        long ticks1601To1970 = 86400L * (369 * 365 + 89) * 10000000;
+        long currentTime = System.currentTimeMillis() + ticks1601To1970;
+        RegistryKey key = new RegistryKey(name, "["+name+"] "+((currentTime - ticks1601To1970) / 1000));
+        key.metadata.add(String.format(Locale.ENGLISH, "#time=%x%08x", currentTime >> 32, (int)currentTime));
+
+        int index = registry.keys.size();
+        String parentName = name;
+        int lastIndex;
+        while ((lastIndex = parentName.lastIndexOf("\\\\")) != -1) {
+            parentName = parentName.substring(0, lastIndex);
+            RegistryKey parentKey = registry.getKey(parentName);
+            if (parentKey != null) {
+                index = registry.keys.indexOf(parentKey) + 1;
+                break;
+            }
         }
+
+        registry.addKey(index, key);
+        modified = true;
+        return key;
     }
 
     public String getStringValue(String key, String name) {
@@ -181,78 +247,29 @@ public class WineRegistryEditor implements Closeable {
     }
 
     private String getRawValue(String key, String name) {
-        lastParentKeyPosition = 0;
-        Location keyLocation = getKeyLocation(key);
-        if (keyLocation == null) return null;
-
-        Location valueLocation = getValueLocation(keyLocation, name);
-        if (valueLocation == null) return null;
-        boolean success = false;
-        char[] buffer = new char[valueLocation.length()];
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE)) {
-            reader.skip(valueLocation.start);
-            success = reader.read(buffer) == buffer.length;
-        }
-        catch (IOException e) {}
-        return success ? unescape(new String(buffer)) : null;
+        RegistryKey registryKey = registry.getKey(escape(key));
+        if (registryKey == null) return null;
+        String value = registryKey.values.get(getValueName(name));
+        return value != null ? unescape(value) : null;
     }
 
     private void setRawValue(String key, String name, String value) {
-        resetLastParentKeyPositionIfNeed(key);
-
-        Location keyLocation = getKeyLocation(key);
-        if (keyLocation == null) {
+        String keyName = escape(key);
+        RegistryKey registryKey = registry.getKey(keyName);
+        if (registryKey == null) {
             if (createKeyIfNotExist) {
-                keyLocation = createKey(key);
+                registryKey = createKey(keyName);
             }
             else return;
         }
 
-        Location valueLocation = getValueLocation(keyLocation, name);
-        char[] buffer = new char[StreamUtils.BUFFER_SIZE];
-        boolean success = false;
-
-        File tempFile = FileUtils.createTempFile(file.getParentFile(), FileUtils.getBasename(file.getPath()));
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE);
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile), StreamUtils.BUFFER_SIZE)) {
-
-            int length;
-            for (int i = 0, end = valueLocation != null ? valueLocation.start : keyLocation.end; i < end; i += length) {
-                length = Math.min(buffer.length, end - i);
-                reader.read(buffer, 0, length);
-                writer.write(buffer, 0, length);
-            }
-
-            if (valueLocation == null) {
-                writer.write("\n"+(name != null ? "\""+escape(name)+"\"" : "@")+"="+value);
-            }
-            else {
-                writer.write(value);
-                reader.skip(valueLocation.length());
-            }
-
-            while ((length = reader.read(buffer)) != -1) writer.write(buffer, 0, length);
-            success = true;
-        }
-        catch (IOException e) {}
-
-        if (success) {
-            modified = true;
-            tempFile.renameTo(cloneFile);
-        }
-        else tempFile.delete();
+        registryKey.values.put(getValueName(name), value);
+        modified = true;
     }
 
     public void removeValue(String key, String name) {
-        lastParentKeyPosition = 0;
-        Location keyLocation = getKeyLocation(key);
-        if (keyLocation == null) return;
-
-        Location valueLocation = getValueLocation(keyLocation, name);
-        if (valueLocation == null) return;
-        removeRegion(valueLocation);
+        RegistryKey registryKey = registry.getKey(escape(key));
+        if (registryKey != null && registryKey.values.remove(getValueName(name)) != null) modified = true;
     }
 
     public boolean removeKey(String key) {
@@ -260,146 +277,20 @@ public class WineRegistryEditor implements Closeable {
     }
 
     public boolean removeKey(String key, boolean removeTree) {
-        lastParentKeyPosition = 0;
+        String keyName = escape(key).toLowerCase(Locale.ENGLISH);
+        String prefix = keyName+"\\\\";
         boolean removed = false;
-        if (removeTree) {
-            Location location;
-            while ((location = getKeyLocation(key, true)) != null) {
-                if (removeRegion(location)) removed = true;
-            }
-        }
-        else {
-            Location location = getKeyLocation(key, false);
-            if (location != null && removeRegion(location)) removed = true;
-        }
-        return removed;
-    }
-
-    private boolean removeRegion(Location location) {
-        char[] buffer = new char[StreamUtils.BUFFER_SIZE];
-        boolean success = false;
-
-        File tempFile = FileUtils.createTempFile(file.getParentFile(), FileUtils.getBasename(file.getPath()));
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE);
-             BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile), StreamUtils.BUFFER_SIZE)) {
-
-            int length = 0;
-            for (int i = 0; i < location.offset; i += length) {
-                length = Math.min(buffer.length, location.offset - i);
-                reader.read(buffer, 0, length);
-                writer.write(buffer, 0, length);
-            }
-
-            boolean skipLine = length > 1 && buffer[length-1] == '\n';
-            reader.skip(location.end - location.offset + (skipLine ? 1 : 0));
-            while ((length = reader.read(buffer)) != -1) writer.write(buffer, 0, length);
-            success = true;
-        }
-        catch (IOException e) {}
-
-        if (success) {
-            modified = true;
-            tempFile.renameTo(cloneFile);
-        }
-        else tempFile.delete();
-        return success;
-    }
-
-    private Location getKeyLocation(String key) {
-        return getKeyLocation(key, false);
-    }
-
-    private Location getKeyLocation(String key, boolean keyAsPrefix) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE)) {
-            int lastIndex = key.lastIndexOf("\\");
-            String parentKey = lastParentKeyPosition == 0 && lastIndex != -1 ? "["+escape(key.substring(0, lastIndex)) : null;
-
-            if (lastParentKeyPosition > 0) reader.skip(lastParentKeyPosition);
-            key = "["+escape(key)+(!keyAsPrefix ? "]" : "");
-            int totalLength = lastParentKeyPosition;
-            int start = -1;
-            int end = -1;
-            int emptyLines = 0;
-            int offset = 0;
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (start == -1) {
-                    if (parentKey != null && line.startsWith(parentKey)) {
-                        lastParentKeyPosition = totalLength;
-                        parentKey = null;
-                    }
-
-                    if (parentKey == null && line.startsWith(key)) {
-                        offset = totalLength - 1;
-                        start = totalLength + line.length() + 1;
-                    }
-                }
-                else {
-                    if (line.startsWith("[")) {
-                        end = Math.max(-1, totalLength - emptyLines - 1);
-                        break;
-                    }
-                    else emptyLines = line.isEmpty() ? emptyLines + 1 : 0;
-                }
-                totalLength += line.length() + 1;
+        for (Iterator<RegistryKey> iterator = registry.keys.iterator(); iterator.hasNext();) {
+            String name = iterator.next().name.toLowerCase(Locale.ENGLISH);
+            if (name.equals(keyName) || (removeTree && name.startsWith(prefix))) {
+                iterator.remove();
+                registry.keysByName.remove(name);
+                removed = true;
             }
-
-            if (end == -1) end = totalLength - 1;
-            return start != -1 ? new Location(offset, start, end) : null;
-        }
-        catch (IOException e) {
-            return null;
-        }
-    }
-
-    private Location getParentKeyLocation(String key) {
-        String[] parts = key.split("\\\\");
-        ArrayList<String> stack = new ArrayList<>(Arrays.asList(parts).subList(0, parts.length - 1));
-
-        while (!stack.isEmpty()) {
-            String currentKey = String.join("\\", stack);
-            Location location = getKeyLocation(currentKey, true);
-            if (location != null) return location;
-            stack.remove(stack.size()-1);
         }
 
-        return null;
-    }
-
-    private Location getValueLocation(Location keyLocation, String name) {
-        if (keyLocation.start == keyLocation.end) return null;
-        try (BufferedReader reader = new BufferedReader(new FileReader(cloneFile), StreamUtils.BUFFER_SIZE)) {
-            reader.skip(keyLocation.start);
-            name = name != null ? "\""+escape(name)+"\"=" : "@=";
-            int totalLength = 0;
-            int start = -1;
-            int end = -1;
-            int offset = 0;
-
-            String line;
-            while ((line = reader.readLine()) != null && totalLength < keyLocation.length()) {
-                if (start == -1) {
-                    if (line.startsWith(name)) {
-                        offset = totalLength - 1;
-                        start = totalLength + name.length();
-                    }
-                }
-                else {
-                    if (line.isEmpty() || lineHasName(line)) {
-                        end = totalLength - 1;
-                        break;
-                    }
-                }
-                totalLength += line.length() + 1;
-            }
-
-            if (end == -1) end = totalLength - 1;
-            return start != -1 ? new Location(keyLocation.start + offset, keyLocation.start + start, keyLocation.start + end) : null;
-        }
-        catch (IOException e) {
-            return null;
-        }
+        if (removed) modified = true;
+        return removed;
     }
 }
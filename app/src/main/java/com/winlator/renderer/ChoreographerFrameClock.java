@@ -0,0 +1,50 @@
+package com.winlator.renderer;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ChoreographerFrameClock extends FrameClock implements Choreographer.FrameCallback {
+    private final AtomicBoolean frameRequested = new AtomicBoolean();
+    private HandlerThread handlerThread;
+    private Handler handler;
+    private boolean destroyed = false;
+
+    public ChoreographerFrameClock(float refreshRate) {
+        super(refreshRate);
+    }
+
+    @Override
+    public void requestFrame() {
+        if (!frameRequested.compareAndSet(false, true)) return;
+
+        synchronized (this) {
+            if (destroyed) return;
+            if (handler == null) {
+                handlerThread = new HandlerThread("FrameClock");
+                handlerThread.start();
+                handler = new Handler(handlerThread.getLooper());
+            }
+            handler.post(() -> Choreographer.getInstance().postFrameCallback(this));
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameRequested.set(false);
+        onFrame(frameTimeNanos);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        destroyed = true;
+        if (handlerThread != null) {
+            handler.post(() -> Choreographer.getInstance().removeFrameCallback(this));
+            handlerThread.quitSafely();
+            handlerThread = null;
+            handler = null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.winlator.renderer;
+
+public abstract class FrameClock {
+    protected final long frameInterval;
+    private long msc = 0;
+    private long lastFrameTime = 0;
+    private OnFrameListener onFrameListener;
+
+    public interface OnFrameListener {
+        void onFrame(long msc, long ust);
+    }
+
+    public FrameClock(float refreshRate) {
+        frameInterval = (long)(1000000000L / refreshRate);
+    }
+
+    protected long getTime() {
+        return System.nanoTime();
+    }
+
+    public abstract void requestFrame();
+
+    public void destroy() {}
+
+    public long getFrameInterval() {
+        return frameInterval;
+    }
+
+    public synchronized long getMsc() {
+        return msc + Math.max(getTime() - lastFrameTime, 0) / frameInterval;
+    }
+
+    public synchronized long getUst() {
+        long elapsedTime = Math.max(getTime() - lastFrameTime, 0);
+        return (lastFrameTime + (elapsedTime / frameInterval) * frameInterval) / 1000;
+    }
+
+    public OnFrameListener getOnFrameListener() {
+        return onFrameListener;
+    }
+
+    public void setOnFrameListener(OnFrameListener onFrameListener) {
+        this.onFrameListener = onFrameListener;
+    }
+
+    protected void onFrame(long frameTime) {
+        long msc;
+        synchronized (this) {
+            long elapsedTime = Math.max(frameTime - lastFrameTime, 0);
+            this.msc += Math.max((elapsedTime + frameInterval / 2) / frameInterval, 1);
+            lastFrameTime = frameTime;
+            msc = this.msc;
+        }
+
+        if (onFrameListener != null) onFrameListener.onFrame(msc, frameTime / 1000);
+    }
+}
@@ -0,0 +1,63 @@
+package com.winlator.renderer;
+
+public class FrameTimeHistogram {
+    public static final float[] BUCKET_LIMITS_MS = {1, 2, 4, 8, 12, 16.7f, 25, 33.3f, 50, Float.MAX_VALUE};
+    private final long[] counts = new long[BUCKET_LIMITS_MS.length];
+    private long totalTimeNs = 0;
+    private long frameCount = 0;
+
+    public synchronized void record(long frameTimeNs) {
+        float frameTimeMs = frameTimeNs / 1000000.0f;
+        for (int i = 0; i < BUCKET_LIMITS_MS.length; i++) {
+            if (frameTimeMs < BUCKET_LIMITS_MS[i]) {
+                counts[i]++;
+                break;
+            }
+        }
+        totalTimeNs += frameTimeNs;
+        frameCount++;
+    }
+
+    public synchronized long[] getCounts() {
+        return counts.clone();
+    }
+
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    public synchronized float getAverageFrameTimeMs() {
+        return frameCount > 0 ? (totalTimeNs / (float)frameCount) / 1000000.0f : 0;
+    }
+
+    public synchronized float getPercentileMs(float percentile) {
+        if (frameCount == 0) return 0;
+        long threshold = (long)Math.ceil(frameCount * percentile);
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            if (count >= threshold) return BUCKET_LIMITS_MS[i];
+        }
+        return Float.MAX_VALUE;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < counts.length; i++) counts[i] = 0;
+        totalTimeNs = 0;
+        frameCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        float lowerLimit = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(lowerLimit).append("-");
+            if (BUCKET_LIMITS_MS[i] != Float.MAX_VALUE) sb.append(BUCKET_LIMITS_MS[i]);
+            sb.append("ms: ").append(counts[i]);
+            lowerLimit = BUCKET_LIMITS_MS[i];
+        }
+        return sb.toString();
+    }
+}
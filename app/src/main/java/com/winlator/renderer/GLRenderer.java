@@ -5,6 +5,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
+import android.util.SparseArray;
 
 import com.winlator.R;
 import com.winlator.XrActivity;
@@ -25,6 +26,7 @@ import com.winlator.xserver.XLock;
 import com.winlator.xserver.XServer;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -40,6 +42,10 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     public final ViewTransformation viewTransformation = new ViewTransformation();
     private final Drawable rootCursorDrawable;
     private final ArrayList<RenderableWindow> renderableWindows = new ArrayList<>();
+    private final SparseArray<RenderableWindow> renderableWindowsById = new SparseArray<>();
+    private volatile boolean sceneUpdatePending = false;
+    private boolean occlusionNeedsUpdate = true;
+    private int sceneVersion = 0;
     private String forceFullscreenWMClass = null;
     private boolean fullscreen = false;
     private boolean toggleFullscreen = false;
@@ -51,6 +57,13 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     private boolean magnifierEnabled = true;
     private int surfaceWidth;
     private int surfaceHeight;
+    private long frameBytesUploaded = 0;
+    private long frameBytesAvoided = 0;
+    private long pendingFramePrepTime = 0;
+    private long framePrepTime = 0;
+    private float frameOverdraw = 0;
+    private int frameWindowsCulled = 0;
+    public final FrameTimeHistogram frameTimeHistogram = new FrameTimeHistogram();
 
     public GLRenderer(XServerView xServerView, XServer xServer) {
         this.xServerView = xServerView;
@@ -112,6 +125,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     }
 
     private void drawFrame() {
+        long frameStartTime = System.nanoTime();
         boolean xrFrame = false;
         if (XrActivity.isSupported()) xrFrame = XrActivity.getInstance().beginFrame(XrActivity.getImmersive(), XrActivity.getSBS());
 
@@ -158,10 +172,22 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
             else XForm.identity(tmpXForm2);
         }
 
+        Texture.resetUploadCounters();
+        if (occlusionNeedsUpdate) {
+            long startTime = System.nanoTime();
+            updateOcclusion();
+            pendingFramePrepTime += System.nanoTime() - startTime;
+        }
+        framePrepTime = pendingFramePrepTime;
+        pendingFramePrepTime = 0;
+
         renderWindows();
         if (cursorVisible) renderCursor();
+        frameBytesUploaded = Texture.getBytesUploaded();
+        frameBytesAvoided = Texture.getBytesAvoided();
 
         if (!magnifierEnabled && !fullscreen) GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+        frameTimeHistogram.record(System.nanoTime() - frameStartTime);
 
         if (xrFrame) {
             XrActivity.getInstance().endFrame();
@@ -172,20 +198,25 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
     @Override
     public void onMapWindow(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        requestSubtreeUpdate(window);
     }
 
     @Override
     public void onUnmapWindow(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        if (forceFullscreenWMClass != null) {
+            requestSceneUpdate();
+        }
+        else {
+            final ArrayList<Window> windows = new ArrayList<>();
+            collectSubtree(window, windows);
+            xServerView.queueEvent(() -> removeSubtree(windows));
+            xServerView.requestRender();
+        }
     }
 
     @Override
     public void onChangeWindowZOrder(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        requestSubtreeUpdate(window);
     }
 
     @Override
@@ -195,11 +226,13 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
     @Override
     public void onUpdateWindowGeometry(final Window window, boolean resized) {
-        if (resized) {
-            xServerView.queueEvent(this::updateScene);
+        if (resized && forceFullscreenWMClass != null) {
+            requestSceneUpdate();
+        }
+        else {
+            xServerView.queueEvent(() -> updateWindowGeometry(window));
+            xServerView.requestRender();
         }
-        else xServerView.queueEvent(() -> updateWindowPosition(window));
-        xServerView.requestRender();
     }
 
     @Override
@@ -244,12 +277,23 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         GLES20.glUniform2f(windowMaterial.getUniformLocation("viewSize"), xServer.screenInfo.width, xServer.screenInfo.height);
         quadVertices.bind(windowMaterial.programId);
 
-        try (XLock lock = xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
-            for (RenderableWindow window : renderableWindows) {
+        int renderedArea = 0;
+        int windowsCulled = 0;
+        try (XLock lock = xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER)) {
+            for (int i = 0; i < renderableWindows.size(); i++) {
+                RenderableWindow window = renderableWindows.get(i);
+                if (window.occluded) {
+                    windowsCulled++;
+                    continue;
+                }
                 renderDrawable(window.content, window.rootX, window.rootY, windowMaterial, window.forceFullscreen);
+                renderedArea += (window.bounds[2] - window.bounds[0]) * (window.bounds[3] - window.bounds[1]);
             }
         }
 
+        frameOverdraw = (float)renderedArea / (xServer.screenInfo.width * xServer.screenInfo.height);
+        frameWindowsCulled = windowsCulled;
+
         quadVertices.disable();
     }
 
@@ -258,7 +302,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         GLES20.glUniform2f(cursorMaterial.getUniformLocation("viewSize"), xServer.screenInfo.width, xServer.screenInfo.height);
         quadVertices.bind(cursorMaterial.programId);
 
-        try (XLock lock = xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
+        try (XLock lock = xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER)) {
             Window pointWindow = xServer.inputDeviceManager.getPointWindow();
             Cursor cursor = pointWindow != null ? pointWindow.attributes.getCursor() : null;
             short x = xServer.pointer.getClampedX();
@@ -286,16 +330,121 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         return Drawable.fromBitmap(bitmap);
     }
 
+    private void requestSceneUpdate() {
+        if (!sceneUpdatePending) {
+            sceneUpdatePending = true;
+            xServerView.queueEvent(this::updateScene);
+        }
+        xServerView.requestRender();
+    }
+
     private void updateScene() {
+        long startTime = System.nanoTime();
+        sceneUpdatePending = false;
         try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+            sceneVersion++;
             renderableWindows.clear();
-            collectRenderableWindows(xServer.windowManager.rootWindow, xServer.windowManager.rootWindow.getX(), xServer.windowManager.rootWindow.getY());
+            collectRenderableWindows(renderableWindows, xServer.windowManager.rootWindow, xServer.windowManager.rootWindow.getX(), xServer.windowManager.rootWindow.getY());
         }
+
+        for (int i = renderableWindowsById.size()-1; i >= 0; i--) {
+            if (renderableWindowsById.valueAt(i).sceneVersion != sceneVersion) renderableWindowsById.removeAt(i);
+        }
+
+        occlusionNeedsUpdate = true;
+        pendingFramePrepTime += System.nanoTime() - startTime;
+    }
+
+    private void requestSubtreeUpdate(final Window window) {
+        if (forceFullscreenWMClass != null) {
+            requestSceneUpdate();
+        }
+        else {
+            xServerView.queueEvent(() -> updateSubtree(window));
+            xServerView.requestRender();
+        }
+    }
+
+    private void updateSubtree(Window window) {
+        long startTime = System.nanoTime();
+        try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+            ArrayList<Window> windows = new ArrayList<>();
+            collectSubtree(window, windows);
+            removeRenderableWindows(windows);
+
+            if (window.getMapState() == Window.MapState.VIEWABLE && xServer.windowManager.getWindow(window.id) == window) {
+                ArrayList<RenderableWindow> subtree = new ArrayList<>();
+                collectRenderableWindows(subtree, window, window.getRootX(), window.getRootY());
+                renderableWindows.addAll(findInsertionIndex(window), subtree);
+            }
+        }
+
+        occlusionNeedsUpdate = true;
+        pendingFramePrepTime += System.nanoTime() - startTime;
     }
 
-    private void collectRenderableWindows(Window window, int x, int y) {
+    private void removeSubtree(ArrayList<Window> windows) {
+        long startTime = System.nanoTime();
+        removeRenderableWindows(windows);
+        occlusionNeedsUpdate = true;
+        pendingFramePrepTime += System.nanoTime() - startTime;
+    }
+
+    private void removeRenderableWindows(ArrayList<Window> windows) {
+        for (Window window : windows) {
+            RenderableWindow renderableWindow = renderableWindowsById.get(window.id);
+            if (renderableWindow != null) {
+                renderableWindowsById.remove(window.id);
+                renderableWindows.remove(renderableWindow);
+            }
+        }
+    }
+
+    private static void collectSubtree(Window window, ArrayList<Window> windows) {
+        windows.add(window);
+        for (Window child : window.getChildren()) collectSubtree(child, windows);
+    }
+
+    private int findInsertionIndex(Window window) {
+        Window rootWindow = xServer.windowManager.rootWindow;
+        for (Window current = window; current != rootWindow && current.getParent() != null; current = current.getParent()) {
+            Window parent = current.getParent();
+            List<Window> siblings = parent.getChildren();
+            for (int i = siblings.indexOf(current)-1; i >= 0; i--) {
+                RenderableWindow renderableWindow = findLastRenderableWindow(siblings.get(i));
+                if (renderableWindow != null) return renderableWindows.indexOf(renderableWindow)+1;
+            }
+
+            RenderableWindow renderableWindow = renderableWindowsById.get(parent.id);
+            if (renderableWindow != null) return renderableWindows.indexOf(renderableWindow)+1;
+        }
+        return 0;
+    }
+
+    private RenderableWindow findLastRenderableWindow(Window window) {
+        if (!window.attributes.isMapped()) return null;
+        List<Window> children = window.getChildren();
+        for (int i = children.size()-1; i >= 0; i--) {
+            RenderableWindow renderableWindow = findLastRenderableWindow(children.get(i));
+            if (renderableWindow != null) return renderableWindow;
+        }
+        return renderableWindowsById.get(window.id);
+    }
+
+    private void addRenderableWindow(ArrayList<RenderableWindow> target, Window window, int x, int y, boolean forceFullscreen) {
+        RenderableWindow renderableWindow = renderableWindowsById.get(window.id);
+        if (renderableWindow == null) {
+            renderableWindow = new RenderableWindow(window.getContent(), x, y, forceFullscreen);
+            renderableWindowsById.put(window.id, renderableWindow);
+        }
+        else renderableWindow.set(window.getContent(), x, y, forceFullscreen);
+        renderableWindow.sceneVersion = sceneVersion;
+        target.add(renderableWindow);
+    }
+
+    private void collectRenderableWindows(ArrayList<RenderableWindow> target, Window window, int x, int y) {
         if (!window.attributes.isMapped()) return;
-        if (window != xServer.windowManager.rootWindow) {
+        if (window != xServer.windowManager.rootWindow && window.getContent() != null) {
             boolean viewable = true;
 
             if (unviewableWMClasses != null) {
@@ -332,14 +481,14 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
                         }
                     }
 
-                    renderableWindows.add(new RenderableWindow(window.getContent(), x, y, forceFullscreen));
+                    addRenderableWindow(target, window, x, y, forceFullscreen);
                 }
-                else renderableWindows.add(new RenderableWindow(window.getContent(), x, y));
+                else addRenderableWindow(target, window, x, y, false);
             }
         }
 
         for (Window child : window.getChildren()) {
-            collectRenderableWindows(child, child.getX() + x, child.getY() + y);
+            collectRenderableWindows(target, child, child.getX() + x, child.getY() + y);
         }
     }
 
@@ -352,14 +501,80 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         }
     }
 
-    private void updateWindowPosition(Window window) {
-        for (RenderableWindow renderableWindow : renderableWindows) {
-            if (renderableWindow.content == window.getContent()) {
-                renderableWindow.rootX = window.getRootX();
-                renderableWindow.rootY = window.getRootY();
-                break;
+    private void updateWindowGeometry(Window window) {
+        long startTime = System.nanoTime();
+        try (XLock lock = xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
+            updateWindowGeometry(window, window.getRootX(), window.getRootY());
+        }
+        occlusionNeedsUpdate = true;
+        pendingFramePrepTime += System.nanoTime() - startTime;
+    }
+
+    private void updateWindowGeometry(Window window, int x, int y) {
+        RenderableWindow renderableWindow = renderableWindowsById.get(window.id);
+        if (renderableWindow != null) {
+            renderableWindow.content = window.getContent();
+            renderableWindow.rootX = (short)x;
+            renderableWindow.rootY = (short)y;
+        }
+
+        for (Window child : window.getChildren()) {
+            updateWindowGeometry(child, child.getX() + x, child.getY() + y);
+        }
+    }
+
+    private void updateOcclusion() {
+        short screenWidth = xServer.screenInfo.width;
+        short screenHeight = xServer.screenInfo.height;
+
+        for (int i = renderableWindows.size()-1; i >= 0; i--) {
+            RenderableWindow window = renderableWindows.get(i);
+            short[] bounds = window.bounds;
+            Drawable content = window.content;
+
+            if (window.forceFullscreen) {
+                short newHeight = (short)Math.min(screenHeight, ((float)screenWidth / content.width) * content.height);
+                short newWidth = (short)(((float)newHeight / content.height) * content.width);
+                bounds[0] = (short)((screenWidth - newWidth) / 2);
+                bounds[1] = (short)((screenHeight - newHeight) / 2);
+                bounds[2] = (short)(bounds[0] + newWidth);
+                bounds[3] = (short)(bounds[1] + newHeight);
+            }
+            else {
+                bounds[0] = (short)Mathf.clamp(window.rootX, 0, screenWidth);
+                bounds[1] = (short)Mathf.clamp(window.rootY, 0, screenHeight);
+                bounds[2] = (short)Mathf.clamp(window.rootX + content.width, 0, screenWidth);
+                bounds[3] = (short)Mathf.clamp(window.rootY + content.height, 0, screenHeight);
             }
+
+            boolean occluded = bounds[2] <= bounds[0] || bounds[3] <= bounds[1];
+            for (int j = i+1; j < renderableWindows.size() && !occluded; j++) {
+                occluded = renderableWindows.get(j).contains(bounds);
+            }
+            window.occluded = occluded;
         }
+
+        occlusionNeedsUpdate = false;
+    }
+
+    public long getFrameBytesUploaded() {
+        return frameBytesUploaded;
+    }
+
+    public long getFrameBytesAvoided() {
+        return frameBytesAvoided;
+    }
+
+    public long getFramePrepTime() {
+        return framePrepTime;
+    }
+
+    public float getFrameOverdraw() {
+        return frameOverdraw;
+    }
+
+    public int getFrameWindowsCulled() {
+        return frameWindowsCulled;
     }
 
     public void setCursorVisible(boolean cursorVisible) {
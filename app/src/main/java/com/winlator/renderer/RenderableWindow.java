@@ -3,19 +3,30 @@ package com.winlator.renderer;
 import com.winlator.xserver.Drawable;
 
 class RenderableWindow {
-    final Drawable content;
+    Drawable content;
     short rootX;
     short rootY;
-    final boolean forceFullscreen;
+    boolean forceFullscreen;
+    boolean occluded;
+    int sceneVersion;
+    final short[] bounds = new short[4];
 
     public RenderableWindow(Drawable content, int rootX, int rootY) {
         this(content, rootX, rootY, false);
     }
 
     public RenderableWindow(Drawable content, int rootX, int rootY, boolean forceFullscreen) {
+        set(content, rootX, rootY, forceFullscreen);
+    }
+
+    void set(Drawable content, int rootX, int rootY, boolean forceFullscreen) {
         this.content = content;
         this.rootX = (short)rootX;
         this.rootY = (short)rootY;
         this.forceFullscreen = forceFullscreen;
     }
+
+    boolean contains(short[] bounds) {
+        return bounds[0] >= this.bounds[0] && bounds[1] >= this.bounds[1] && bounds[2] <= this.bounds[2] && bounds[3] <= this.bounds[3];
+    }
 }
@@ -0,0 +1,35 @@
+package com.winlator.renderer;
+
+public class SyntheticFrameClock extends FrameClock {
+    private long time = 0;
+    private boolean frameRequested = false;
+
+    public SyntheticFrameClock(float refreshRate) {
+        super(refreshRate);
+    }
+
+    @Override
+    protected synchronized long getTime() {
+        return time;
+    }
+
+    @Override
+    public synchronized void requestFrame() {
+        frameRequested = true;
+    }
+
+    public synchronized boolean isFrameRequested() {
+        return frameRequested;
+    }
+
+    public void advance() {
+        long frameTime;
+        synchronized (this) {
+            time += frameInterval;
+            if (!frameRequested) return;
+            frameRequested = false;
+            frameTime = time;
+        }
+        onFrame(frameTime);
+    }
+}
@@ -2,8 +2,10 @@ package com.winlator.renderer;
 
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 
 import com.winlator.XrActivity;
+import com.winlator.xserver.DamageRegion;
 import com.winlator.xserver.Drawable;
 
 import java.nio.ByteBuffer;
@@ -16,6 +18,14 @@ public class Texture {
     private int minFilter = GLES20.GL_LINEAR;
     private int format = GLES11Ext.GL_BGRA;
     protected boolean needsUpdate = true;
+    private static final byte PIXEL_BUFFER_COUNT = 3;
+    private static final int PIXEL_BUFFER_MIN_UPLOAD_SIZE = 65536;
+    private int[] pixelBufferIds;
+    private int pixelBufferCapacity = 0;
+    private byte pixelBufferIndex = 0;
+    private static final short[] damageRects = new short[DamageRegion.MAX_RECTS * 4];
+    private static long bytesUploaded = 0;
+    private static long bytesAvoided = 0;
 
     public void allocateTexture(short width, short height, ByteBuffer data) {
         int[] textureIds = new int[1];
@@ -91,17 +101,122 @@ public class Texture {
         ByteBuffer data = drawable.getData();
         if (data == null) return;
 
+        DamageRegion damage = drawable.getDamage();
+        int totalBytes = drawable.width * drawable.height * 4;
+
         if (!isAllocated()) {
             allocateTexture(drawable.width, drawable.height, data);
+            damage.clear();
+            bytesUploaded += totalBytes;
         }
         else if (needsUpdate) {
+            int numRects = damage.copyRects(damageRects);
+            if (numRects == 0) {
+                damageRects[0] = 0;
+                damageRects[1] = 0;
+                damageRects[2] = drawable.width;
+                damageRects[3] = drawable.height;
+                numRects = 1;
+            }
+
+            int uploadedBytes = 0;
+            short minY = drawable.height;
+            short maxY = 0;
+            for (int i = 0, j = 0; i < numRects; i++, j += 4) {
+                uploadedBytes += (damageRects[j+2] - damageRects[j+0]) * (damageRects[j+3] - damageRects[j+1]) * 4;
+                minY = (short)Math.min(minY, damageRects[j+1]);
+                maxY = (short)Math.max(maxY, damageRects[j+3]);
+            }
+
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, drawable.width, drawable.height, format, GLES20.GL_UNSIGNED_BYTE, data);
+            GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, drawable.width);
+
+            int stagingSize = (maxY - minY) * drawable.width * 4;
+            if (stagingSize < PIXEL_BUFFER_MIN_UPLOAD_SIZE || !uploadFromPixelBuffer(drawable, data, numRects, minY, maxY)) {
+                for (int i = 0, j = 0; i < numRects; i++, j += 4) {
+                    short x = damageRects[j+0];
+                    short y = damageRects[j+1];
+                    GLES20.glPixelStorei(GLES30.GL_UNPACK_SKIP_PIXELS, x);
+                    GLES20.glPixelStorei(GLES30.GL_UNPACK_SKIP_ROWS, y);
+                    GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, damageRects[j+2] - x, damageRects[j+3] - y, format, GLES20.GL_UNSIGNED_BYTE, data);
+                }
+            }
+
+            GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, 0);
+            GLES20.glPixelStorei(GLES30.GL_UNPACK_SKIP_PIXELS, 0);
+            GLES20.glPixelStorei(GLES30.GL_UNPACK_SKIP_ROWS, 0);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+            bytesUploaded += uploadedBytes;
+            bytesAvoided += Math.max(totalBytes - uploadedBytes, 0);
+            damage.clear();
             needsUpdate = false;
         }
     }
 
+    private boolean uploadFromPixelBuffer(Drawable drawable, ByteBuffer data, int numRects, short minY, short maxY) {
+        int capacity = drawable.width * drawable.height * 4;
+        if (pixelBufferIds == null || pixelBufferCapacity != capacity) {
+            destroyPixelBuffers();
+            pixelBufferIds = new int[PIXEL_BUFFER_COUNT];
+            GLES30.glGenBuffers(PIXEL_BUFFER_COUNT, pixelBufferIds, 0);
+            for (int pixelBufferId : pixelBufferIds) {
+                GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, pixelBufferId);
+                GLES30.glBufferData(GLES30.GL_PIXEL_UNPACK_BUFFER, capacity, null, GLES30.GL_STREAM_DRAW);
+            }
+            pixelBufferCapacity = capacity;
+            pixelBufferIndex = 0;
+        }
+
+        int rowStride = drawable.width * 4;
+        int stagingSize = (maxY - minY) * rowStride;
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, pixelBufferIds[pixelBufferIndex]);
+        pixelBufferIndex = (byte)((pixelBufferIndex + 1) % PIXEL_BUFFER_COUNT);
+
+        ByteBuffer stagingData = (ByteBuffer)GLES30.glMapBufferRange(GLES30.GL_PIXEL_UNPACK_BUFFER, 0, stagingSize, GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_BUFFER_BIT);
+        if (stagingData == null) {
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+            return false;
+        }
+
+        ByteBuffer srcData = data.duplicate();
+        srcData.limit(maxY * rowStride).position(minY * rowStride);
+        stagingData.put(srcData);
+        GLES30.glUnmapBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER);
+
+        for (int i = 0, j = 0; i < numRects; i++, j += 4) {
+            short x = damageRects[j+0];
+            short y = damageRects[j+1];
+            GLES20.glPixelStorei(GLES30.GL_UNPACK_SKIP_PIXELS, x);
+            GLES20.glPixelStorei(GLES30.GL_UNPACK_SKIP_ROWS, y - minY);
+            GLES30.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, damageRects[j+2] - x, damageRects[j+3] - y, format, GLES20.GL_UNSIGNED_BYTE, 0);
+        }
+
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+        return true;
+    }
+
+    private void destroyPixelBuffers() {
+        if (pixelBufferIds != null) {
+            GLES30.glDeleteBuffers(pixelBufferIds.length, pixelBufferIds, 0);
+            pixelBufferIds = null;
+            pixelBufferCapacity = 0;
+        }
+    }
+
+    public static long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    public static long getBytesAvoided() {
+        return bytesAvoided;
+    }
+
+    public static void resetUploadCounters() {
+        bytesUploaded = 0;
+        bytesAvoided = 0;
+    }
+
     public boolean isAllocated() {
         return textureId > 0;
     }
@@ -121,6 +236,7 @@ public class Texture {
     }
 
     public void destroy() {
+        destroyPixelBuffers();
         if (textureId > 0) {
             int[] textureIds = new int[]{textureId};
             GLES20.glDeleteTextures(textureIds.length, textureIds, 0);
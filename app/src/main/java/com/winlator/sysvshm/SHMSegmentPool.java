@@ -0,0 +1,102 @@
+package com.winlator.sysvshm;
+
+import com.winlator.xconnector.XConnectorEpoll;
+
+import java.util.ArrayList;
+
+public class SHMSegmentPool {
+    private static final int PAGE_SIZE = 4096;
+    private final ArrayList<SysVSharedMemory.SHMemory> freeSegments = new ArrayList<>();
+    private final long maxRetainedBytes;
+    private final int maxSegments;
+    private long retainedBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long savedSyscallCount = 0;
+
+    public SHMSegmentPool() {
+        this(64 * 1024 * 1024, 64);
+    }
+
+    public SHMSegmentPool(long maxRetainedBytes, int maxSegments) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.maxSegments = maxSegments;
+    }
+
+    public static long getSizeClass(long size) {
+        long granularity = Math.max(PAGE_SIZE, Long.highestOneBit(Math.max(size, 1)) / 8);
+        return ((Math.max(size, 1) + granularity - 1) / granularity) * granularity;
+    }
+
+    synchronized SysVSharedMemory.SHMemory acquire(long capacity) {
+        for (int i = freeSegments.size() - 1; i >= 0; i--) {
+            SysVSharedMemory.SHMemory shmemory = freeSegments.get(i);
+            if (shmemory.capacity == capacity) {
+                freeSegments.remove(i);
+                retainedBytes -= capacity;
+                hitCount++;
+                savedSyscallCount += shmemory.data != null ? 5 : 3;
+                return shmemory;
+            }
+        }
+
+        missCount++;
+        return null;
+    }
+
+    synchronized void release(SysVSharedMemory.SHMemory shmemory) {
+        if (shmemory.capacity > maxRetainedBytes || !SysVSharedMemory.clearMemoryFd(shmemory.fd, shmemory.capacity)) {
+            destroy(shmemory);
+            return;
+        }
+
+        freeSegments.add(shmemory);
+        retainedBytes += shmemory.capacity;
+        trim(maxRetainedBytes, maxSegments);
+    }
+
+    public synchronized void trim(long maxRetainedBytes, int maxSegments) {
+        while (!freeSegments.isEmpty() && (retainedBytes > maxRetainedBytes || freeSegments.size() > maxSegments)) {
+            SysVSharedMemory.SHMemory shmemory = freeSegments.remove(0);
+            retainedBytes -= shmemory.capacity;
+            destroy(shmemory);
+        }
+    }
+
+    public void clear() {
+        trim(0, 0);
+    }
+
+    static void destroy(SysVSharedMemory.SHMemory shmemory) {
+        if (shmemory.data != null) {
+            SysVSharedMemory.unmapSHMSegment(shmemory.data, shmemory.capacity);
+            shmemory.data = null;
+        }
+
+        if (shmemory.fd != -1) {
+            XConnectorEpoll.closeFd(shmemory.fd);
+            shmemory.fd = -1;
+        }
+    }
+
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized float getHitRate() {
+        long total = hitCount + missCount;
+        return total > 0 ? (float)hitCount / total : 0;
+    }
+
+    public synchronized long getSavedSyscallCount() {
+        return savedSyscallCount;
+    }
+}
@@ -4,24 +4,31 @@ import android.os.SharedMemory;
 import android.system.ErrnoException;
 import android.util.SparseArray;
 
-import com.winlator.xconnector.XConnectorEpoll;
-
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 
 public class SysVSharedMemory {
     private final SparseArray<SHMemory> shmemories = new SparseArray<>();
+    private final ArrayList<SHMemory> deletedSHMemories = new ArrayList<>();
+    private final SHMSegmentPool segmentPool = new SHMSegmentPool();
     private int maxSHMemoryId = 0;
 
     static {
         System.loadLibrary("winlator");
     }
 
-    private static class SHMemory {
-        private int fd;
-        private long size;
-        private ByteBuffer data;
+    static class SHMemory {
+        int fd;
+        long size;
+        long capacity;
+        ByteBuffer data;
+        short attachCount;
+    }
+
+    public SHMSegmentPool getSegmentPool() {
+        return segmentPool;
     }
 
     public int getFd(int shmid) {
@@ -33,33 +40,45 @@ public class SysVSharedMemory {
 
     public int get(long size) {
         synchronized (shmemories) {
-            int index = shmemories.size();
-            int fd = createMemoryFd("sysvshm-" + index, (int) size);
-            if (fd < 0) return -1;
+            long capacity = SHMSegmentPool.getSizeClass(size);
+            SHMemory shmemory = segmentPool.acquire(capacity);
+            if (shmemory == null) {
+                int fd = createMemoryFd("sysvshm-" + shmemories.size(), (int)capacity);
+                if (fd < 0) return -1;
+
+                shmemory = new SHMemory();
+                shmemory.fd = fd;
+                shmemory.capacity = capacity;
+            }
 
-            SHMemory shmemory = new SHMemory();
             int id = ++maxSHMemoryId;
-            shmemory.fd = fd;
             shmemory.size = size;
+            shmemory.attachCount = 0;
             shmemories.put(id, shmemory);
             return id;
         }
     }
 
     public void delete(int shmid) {
-        SHMemory shmemory = shmemories.get(shmid);
-        if (shmemory != null) {
-            if (shmemory.fd != -1) {
-                XConnectorEpoll.closeFd(shmemory.fd);
-                shmemory.fd = -1;
+        synchronized (shmemories) {
+            SHMemory shmemory = shmemories.get(shmid);
+            if (shmemory != null) {
+                shmemories.remove(shmid);
+                if (shmemory.attachCount > 0) {
+                    deletedSHMemories.add(shmemory);
+                }
+                else segmentPool.release(shmemory);
             }
-            shmemories.remove(shmid);
         }
     }
 
     public void deleteAll() {
         synchronized (shmemories) {
-            for (int i = shmemories.size() - 1; i >= 0; i--) delete(shmemories.keyAt(i));
+            for (int i = shmemories.size() - 1; i >= 0; i--) SHMSegmentPool.destroy(shmemories.valueAt(i));
+            for (SHMemory shmemory : deletedSHMemories) SHMSegmentPool.destroy(shmemory);
+            shmemories.clear();
+            deletedSHMemories.clear();
+            segmentPool.clear();
         }
     }
 
@@ -67,22 +86,50 @@ public class SysVSharedMemory {
         synchronized (shmemories) {
             SHMemory shmemory = shmemories.get(shmid);
             if (shmemory != null) {
-                if (shmemory.data == null) shmemory.data = mapSHMSegment(shmemory.fd, shmemory.size, 0, true);
+                if (shmemory.data == null) shmemory.data = mapSHMSegment(shmemory.fd, shmemory.capacity, 0, false);
+                if (shmemory.data != null) shmemory.attachCount++;
                 return shmemory.data;
             } else return null;
         }
     }
 
+    public void retain(ByteBuffer data) {
+        synchronized (shmemories) {
+            for (int i = 0; i < shmemories.size(); i++) {
+                SHMemory shmemory = shmemories.valueAt(i);
+                if (shmemory.data == data) {
+                    shmemory.attachCount++;
+                    return;
+                }
+            }
+
+            for (SHMemory shmemory : deletedSHMemories) {
+                if (shmemory.data == data) {
+                    shmemory.attachCount++;
+                    return;
+                }
+            }
+        }
+    }
+
     public void detach(ByteBuffer data) {
         synchronized (shmemories) {
             for (int i = 0; i < shmemories.size(); i++) {
                 SHMemory shmemory = shmemories.valueAt(i);
                 if (shmemory.data == data) {
-                    if (shmemory.data != null) {
-                        unmapSHMSegment(shmemory.data, shmemory.size);
-                        shmemory.data = null;
+                    if (shmemory.attachCount > 0) shmemory.attachCount--;
+                    return;
+                }
+            }
+
+            for (int i = 0; i < deletedSHMemories.size(); i++) {
+                SHMemory shmemory = deletedSHMemories.get(i);
+                if (shmemory.data == data) {
+                    if (--shmemory.attachCount <= 0) {
+                        deletedSHMemories.remove(i);
+                        segmentPool.release(shmemory);
                     }
-                    break;
+                    return;
                 }
             }
         }
@@ -90,6 +137,8 @@ public class SysVSharedMemory {
 
     public static native int createMemoryFd(String name, int size);
 
+    static native boolean clearMemoryFd(int fd, long size);
+
     public static native ByteBuffer mapSHMSegment(int fd, long size, int offset, boolean readonly);
 
     public static native void unmapSHMSegment(ByteBuffer data, long size);
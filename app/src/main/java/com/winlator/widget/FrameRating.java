@@ -9,6 +9,8 @@ import android.widget.FrameLayout;
 import android.widget.TextView;
 
 import com.winlator.R;
+import com.winlator.renderer.FrameTimeHistogram;
+import com.winlator.renderer.GLRenderer;
 
 import java.util.Locale;
 
@@ -17,6 +19,11 @@ public class FrameRating extends FrameLayout implements Runnable {
     private int frameCount = 0;
     private float lastFPS = 0;
     private final TextView textView;
+    private GLRenderer renderer;
+    private float lastFramePrepTime = 0;
+    private float lastOverdraw = 0;
+    private float lastAverageFrameTime = 0;
+    private float lastSlowFrameTime = 0;
 
     public FrameRating(Context context) {
         this(context, null);
@@ -35,11 +42,23 @@ public class FrameRating extends FrameLayout implements Runnable {
         addView(view);
     }
 
+    public void setRenderer(GLRenderer renderer) {
+        this.renderer = renderer;
+    }
+
     public void update() {
         if (lastTime == 0) lastTime = SystemClock.elapsedRealtime();
         long time = SystemClock.elapsedRealtime();
         if (time >= lastTime + 500) {
             lastFPS = ((float)(frameCount * 1000) / (time - lastTime));
+            if (renderer != null) {
+                lastFramePrepTime = renderer.getFramePrepTime() / 1000000.0f;
+                lastOverdraw = renderer.getFrameOverdraw();
+                FrameTimeHistogram frameTimeHistogram = renderer.frameTimeHistogram;
+                lastAverageFrameTime = frameTimeHistogram.getAverageFrameTimeMs();
+                lastSlowFrameTime = frameTimeHistogram.getPercentileMs(0.95f);
+                frameTimeHistogram.reset();
+            }
             post(this);
             lastTime = time;
             frameCount = 0;
@@ -51,6 +70,11 @@ public class FrameRating extends FrameLayout implements Runnable {
     @Override
     public void run() {
         if (getVisibility() == GONE) setVisibility(View.VISIBLE);
-        textView.setText(String.format(Locale.ENGLISH, "%.1f", lastFPS));
+        if (renderer != null) {
+            float[] bucketLimits = FrameTimeHistogram.BUCKET_LIMITS_MS;
+            String slowFrameTime = lastSlowFrameTime != Float.MAX_VALUE ? String.format(Locale.ENGLISH, "<%.1fms", lastSlowFrameTime) : String.format(Locale.ENGLISH, ">%.1fms", bucketLimits[bucketLimits.length-2]);
+            textView.setText(String.format(Locale.ENGLISH, "%.1f | %.2fms | %.1fx | %.1fms p95%s", lastFPS, lastFramePrepTime, lastOverdraw, lastAverageFrameTime, slowFrameTime));
+        }
+        else textView.setText(String.format(Locale.ENGLISH, "%.1f", lastFPS));
     }
 }
\ No newline at end of file
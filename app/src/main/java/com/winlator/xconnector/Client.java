@@ -12,7 +12,10 @@ public class Client {
     private Object tag;
     protected Thread pollThread;
     protected int shutdownFd;
+    protected int shardIndex;
     protected boolean connected;
+    protected boolean epollArmed = true;
+    protected volatile boolean suspended;
 
     public Client(XConnectorEpoll connector, ClientSocket clientSocket) {
         this.connector = connector;
@@ -21,12 +24,18 @@ public class Client {
 
     public void createIOStreams() {
         if (inputStream != null || outputStream != null) return;
-        inputStream = new XInputStream(clientSocket, connector.getInitialInputBufferCapacity());
-        outputStream = new XOutputStream(clientSocket, connector.getInitialOutputBufferCapacity());
+        inputStream = new XInputStream(clientSocket, connector.getInitialInputBufferCapacity(), connector.bufferPool);
+        outputStream = new XOutputStream(clientSocket, connector.getInitialOutputBufferCapacity(), connector.bufferPool);
+        if (!connector.isMultithreadedClients()) outputStream.setPendingDataListener(() -> connector.updateClientEvents(this));
         inputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
         outputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
     }
 
+    protected void releaseIOStreams() {
+        if (inputStream != null) inputStream.release();
+        if (outputStream != null) outputStream.release();
+    }
+
     public XInputStream getInputStream() {
         return inputStream;
     }
@@ -35,6 +44,18 @@ public class Client {
         return outputStream;
     }
 
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    public void suspend() {
+        connector.suspendClient(this);
+    }
+
+    public void resume() {
+        connector.resumeClient(this);
+    }
+
     public Object getTag() {
         return tag;
     }
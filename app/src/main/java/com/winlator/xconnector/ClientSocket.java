@@ -52,6 +52,24 @@ public class ClientSocket {
         else throw new IOException("Failed to write data.");
     }
 
+    public int send(ByteBuffer data, boolean nonBlocking) throws IOException {
+        int position = data.position();
+        int bytesSent = send(fd, data, position, data.remaining(), nonBlocking);
+        if (bytesSent >= 0) {
+            data.position(position + bytesSent);
+            return bytesSent;
+        }
+        else throw new IOException("Failed to send data.");
+    }
+
+    public int writev(ByteBuffer[] buffers, int[] offsets, int[] lengths, int count, int ancillaryFd, boolean nonBlocking) throws IOException {
+        int bytesWritten = writev(fd, buffers, offsets, lengths, count, ancillaryFd, nonBlocking);
+        if (bytesWritten >= 0) {
+            return bytesWritten;
+        }
+        else throw new IOException("Failed to write data.");
+    }
+
     public int recvAncillaryMsg(ByteBuffer data) throws IOException {
         int position = data.position();
         int bytesRead = recvAncillaryMsg(fd, data, position, data.remaining());
@@ -77,6 +95,10 @@ public class ClientSocket {
 
     private native int write(int fd, ByteBuffer data, int length);
 
+    private native int send(int fd, ByteBuffer data, int offset, int length, boolean nonBlocking);
+
+    private native int writev(int fd, ByteBuffer[] buffers, int[] offsets, int[] lengths, int count, int ancillaryFd, boolean nonBlocking);
+
     private native int recvAncillaryMsg(int clientFd, ByteBuffer data, int offset, int length);
 
     private native int sendAncillaryMsg(int clientFd, ByteBuffer data, int length, int ancillaryFd);
@@ -0,0 +1,66 @@
+package com.winlator.xconnector;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+public class DirectBufferPool {
+    private static final byte MIN_SIZE_CLASS = 10;
+    private static final byte MAX_SIZE_CLASS = 26;
+    private final ArrayDeque<ByteBuffer>[] freeBuffers;
+    private final int maxBuffersPerSizeClass;
+    private long allocationCount = 0;
+    private long reuseCount = 0;
+
+    public DirectBufferPool() {
+        this(4);
+    }
+
+    public DirectBufferPool(int maxBuffersPerSizeClass) {
+        this.maxBuffersPerSizeClass = maxBuffersPerSizeClass;
+        freeBuffers = new ArrayDeque[MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1];
+        for (int i = 0; i < freeBuffers.length; i++) freeBuffers[i] = new ArrayDeque<>();
+    }
+
+    private static int getSizeClass(int capacity) {
+        int sizeClass = 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1);
+        return Math.max(sizeClass, MIN_SIZE_CLASS);
+    }
+
+    public synchronized ByteBuffer acquire(int minCapacity) {
+        int sizeClass = getSizeClass(minCapacity);
+        if (sizeClass > MAX_SIZE_CLASS) {
+            allocationCount++;
+            return ByteBuffer.allocateDirect(minCapacity);
+        }
+
+        ByteBuffer buffer = freeBuffers[sizeClass - MIN_SIZE_CLASS].poll();
+        if (buffer != null) {
+            reuseCount++;
+            buffer.clear();
+            return buffer;
+        }
+
+        allocationCount++;
+        return ByteBuffer.allocateDirect(1 << sizeClass);
+    }
+
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1) return;
+
+        int sizeClass = getSizeClass(capacity);
+        if (sizeClass < MIN_SIZE_CLASS || sizeClass > MAX_SIZE_CLASS) return;
+
+        ArrayDeque<ByteBuffer> buffers = freeBuffers[sizeClass - MIN_SIZE_CLASS];
+        if (buffers.size() < maxBuffersPerSizeClass) buffers.push(buffer);
+    }
+
+    public synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+}
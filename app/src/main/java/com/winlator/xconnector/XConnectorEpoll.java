@@ -2,25 +2,46 @@ package com.winlator.xconnector;
 
 import android.util.SparseArray;
 
-import androidx.annotation.Keep;
-
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class XConnectorEpoll implements Runnable {
+    private static final int EPOLLIN = 0x001;
+    private static final int EPOLLOUT = 0x004;
+    private static final int EPOLLERR = 0x008;
+    private static final int EPOLLHUP = 0x010;
+    private static final int EPOLLONESHOT = 1 << 30;
+    private static final int EVENT_NEW_CONNECTION = 1 << 24;
+    private static final int MIN_EVENT_CAPACITY = 16;
+    private static final int MAX_EVENT_CAPACITY = 1024;
     private final ConnectionHandler connectionHandler;
     private final RequestHandler requestHandler;
     private final int epollFd;
     private final int serverFd;
     private final int shutdownFd;
+    private final int wakeupFd;
+    private final ArrayList<Client> resumedClients = new ArrayList<>();
+    private final ClientSocket wakeupSocket;
+    private final ByteBuffer wakeupBuffer = ByteBuffer.allocateDirect(8);
+    private final ByteBuffer wakeupSignal = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder()).putLong(0, 1);
+    private int[] readyEvents = new int[MIN_EVENT_CAPACITY * 2];
     private Thread epollThread;
     private boolean running = false;
     private boolean multithreadedClients = false;
+    private int clientShardCount = 0;
+    private int nextShardIndex = 0;
+    private ExecutorService[] shardExecutors;
     private boolean canReceiveAncillaryMessages = false;
     private int initialInputBufferCapacity = 4096;
     private int initialOutputBufferCapacity = 4096;
+    private int outputHighWaterMark = 1 << 20;
     private final SparseArray<Client> connectedClients = new SparseArray<>();
+    public final DirectBufferPool bufferPool = new DirectBufferPool();
 
     static {
         System.loadLibrary("winlator");
@@ -55,6 +76,16 @@ public class XConnectorEpoll implements Runnable {
             throw new RuntimeException("Failed to add shutdown fd to epoll.");
         }
 
+        wakeupFd = createEventFd();
+        if (!addFdToEpoll(epollFd, wakeupFd)) {
+            closeFd(serverFd);
+            closeFd(shutdownFd);
+            closeFd(wakeupFd);
+            closeFd(epollFd);
+            throw new RuntimeException("Failed to add wakeup fd to epoll.");
+        }
+        wakeupSocket = new ClientSocket(wakeupFd);
+
         epollThread = new Thread(this);
     }
 
@@ -80,11 +111,56 @@ public class XConnectorEpoll implements Runnable {
 
     @Override
     public void run() {
-        while (running && doEpollIndefinitely(epollFd, serverFd, !multithreadedClients));
+        boolean shardedClients = isShardedClients();
+        if (shardedClients) startShardExecutors();
+        while (running) {
+            int numEvents = doEpollIndefinitely(epollFd, serverFd, !multithreadedClients, shardedClients, readyEvents);
+            if (numEvents < 0) break;
+
+            for (int i = 0, j = 0; i < numEvents; i++, j += 2) {
+                int fd = readyEvents[j];
+                int events = readyEvents[j+1];
+                if ((events & EVENT_NEW_CONNECTION) != 0) {
+                    handleNewConnection(fd);
+                }
+                else handleExistingConnection(fd, events);
+            }
+
+            ensureEventCapacity(numEvents);
+        }
+        if (shardedClients) stopShardExecutors();
         shutdown();
     }
 
-    @Keep
+    private void ensureEventCapacity(int numEvents) {
+        int clientCount;
+        synchronized (connectedClients) {
+            clientCount = connectedClients.size();
+        }
+
+        int capacity = readyEvents.length / 2;
+        if (capacity >= MAX_EVENT_CAPACITY) return;
+        if (numEvents == capacity || capacity < clientCount + 3) {
+            readyEvents = new int[Math.min(Math.max(capacity * 2, clientCount + 3), MAX_EVENT_CAPACITY) * 2];
+        }
+    }
+
+    private void startShardExecutors() {
+        shardExecutors = new ExecutorService[clientShardCount];
+        for (int i = 0; i < clientShardCount; i++) shardExecutors[i] = Executors.newSingleThreadExecutor();
+    }
+
+    private void stopShardExecutors() {
+        for (ExecutorService executor : shardExecutors) executor.shutdown();
+        for (ExecutorService executor : shardExecutors) {
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS));
+            }
+            catch (InterruptedException e) {}
+        }
+        shardExecutors = null;
+    }
+
     private void handleNewConnection(int fd) {
         final Client client = new Client(this, new ClientSocket(fd));
         client.connected = true;
@@ -92,26 +168,89 @@ public class XConnectorEpoll implements Runnable {
             client.shutdownFd = createEventFd();
             client.pollThread = new Thread(() -> {
                 connectionHandler.handleNewConnection(client);
-                while (client.connected && waitForSocketRead(client.clientSocket.fd, client.shutdownFd));
+                while (client.connected && waitForSocketRead(client.clientSocket.fd, client.shutdownFd) >= 0) handleExistingConnection(client.clientSocket.fd, EPOLLIN);
             });
             client.pollThread.start();
         }
-        else connectionHandler.handleNewConnection(client);
-        connectedClients.put(fd, client);
+        else {
+            if (isShardedClients()) {
+                client.shardIndex = nextShardIndex;
+                nextShardIndex = (nextShardIndex + 1) % clientShardCount;
+            }
+            connectionHandler.handleNewConnection(client);
+        }
+
+        synchronized (connectedClients) {
+            connectedClients.put(fd, client);
+        }
     }
 
-    @Keep
-    private void handleExistingConnection(int fd) {
-        Client client = connectedClients.get(fd);
+    private void handleExistingConnection(int fd, int events) {
+        if (fd == wakeupFd) {
+            handleResumedClients();
+            return;
+        }
+
+        final Client client = getClient(fd);
         if (client == null) return;
 
+        if (shardExecutors != null) {
+            synchronized (client) {
+                client.epollArmed = false;
+            }
+
+            shardExecutors[client.shardIndex].execute(() -> {
+                handleClientEvents(client, events);
+                if (client.connected) rearmClient(client);
+            });
+        }
+        else handleClientEvents(client, events);
+    }
+
+    private void handleClientEvents(Client client, int events) {
+        if ((events & EPOLLOUT) != 0) {
+            try {
+                client.getOutputStream().flushPendingData();
+            }
+            catch (IOException e) {
+                killConnection(client);
+                return;
+            }
+        }
+
+        if ((events & (EPOLLIN | EPOLLERR | EPOLLHUP)) != 0) handleClientRequests(client);
+    }
+
+    private int getClientEvents(Client client) {
+        XOutputStream outputStream = client.getOutputStream();
+        int pendingBytes = outputStream != null ? outputStream.getPendingBytes() : 0;
+        int events = pendingBytes < outputHighWaterMark ? EPOLLIN : 0;
+        if (pendingBytes > 0) events |= EPOLLOUT;
+        if (shardExecutors != null) events |= EPOLLONESHOT;
+        return events;
+    }
+
+    private void rearmClient(Client client) {
+        synchronized (client) {
+            client.epollArmed = true;
+            modifyFdInEpoll(epollFd, client.clientSocket.fd, getClientEvents(client));
+        }
+    }
+
+    protected void updateClientEvents(Client client) {
+        synchronized (client) {
+            if (!client.connected || !client.epollArmed) return;
+            modifyFdInEpoll(epollFd, client.clientSocket.fd, getClientEvents(client));
+        }
+    }
+
+    private void handleClientRequests(Client client) {
         XInputStream inputStream = client.getInputStream();
         try {
             if (inputStream != null) {
                 if (inputStream.readMoreData(canReceiveAncillaryMessages) > 0) {
-                    int activePosition = 0;
-                    while (running && requestHandler.handleRequest(client)) activePosition = inputStream.getActivePosition();
-                    inputStream.setActivePosition(activePosition);
+                    if (!client.suspended) processClientRequests(client);
+                    if (multithreadedClients) waitWhileSuspended(client);
                 }
                 else killConnection(client);
             }
@@ -122,14 +261,105 @@ public class XConnectorEpoll implements Runnable {
         }
     }
 
+    private void processClientRequests(Client client) throws IOException {
+        XInputStream inputStream = client.getInputStream();
+        XOutputStream outputStream = client.getOutputStream();
+        outputStream.deferFlush();
+        try {
+            int activePosition = inputStream.getActivePosition();
+            while (running && !client.suspended && requestHandler.handleRequest(client)) activePosition = inputStream.getActivePosition();
+            inputStream.setActivePosition(activePosition);
+        }
+        finally {
+            outputStream.resumeFlush();
+        }
+    }
+
+    private void waitWhileSuspended(Client client) throws IOException {
+        while (client.suspended) {
+            synchronized (client) {
+                while (client.suspended && client.connected) {
+                    try {
+                        client.wait();
+                    }
+                    catch (InterruptedException e) {}
+                }
+            }
+            if (!client.connected) return;
+            processClientRequests(client);
+        }
+    }
+
+    private void resumeClientRequests(Client client) {
+        if (!client.connected || client.suspended || client.getInputStream() == null) return;
+        try {
+            processClientRequests(client);
+        }
+        catch (IOException e) {
+            killConnection(client);
+        }
+    }
+
+    private void handleResumedClients() {
+        wakeupBuffer.clear();
+        try {
+            wakeupSocket.read(wakeupBuffer);
+        }
+        catch (IOException e) {}
+
+        while (true) {
+            final Client client;
+            synchronized (resumedClients) {
+                if (resumedClients.isEmpty()) break;
+                client = resumedClients.remove(resumedClients.size()-1);
+            }
+
+            if (shardExecutors != null) {
+                shardExecutors[client.shardIndex].execute(() -> resumeClientRequests(client));
+            }
+            else resumeClientRequests(client);
+        }
+    }
+
+    public void suspendClient(Client client) {
+        client.suspended = true;
+    }
+
+    public void resumeClient(Client client) {
+        if (!client.suspended) return;
+        if (multithreadedClients) {
+            synchronized (client) {
+                client.suspended = false;
+                client.notifyAll();
+            }
+            return;
+        }
+
+        client.suspended = false;
+        synchronized (resumedClients) {
+            resumedClients.add(client);
+        }
+
+        try {
+            wakeupSocket.write(wakeupSignal);
+        }
+        catch (IOException e) {}
+    }
+
     public Client getClient(int fd) {
-        return connectedClients.get(fd);
+        synchronized (connectedClients) {
+            return connectedClients.get(fd);
+        }
     }
 
     public void killConnection(Client client) {
         client.connected = false;
         connectionHandler.handleConnectionShutdown(client);
         if (multithreadedClients) {
+            synchronized (client) {
+                client.notifyAll();
+            }
+
             if (Thread.currentThread() != client.pollThread) {
                 client.requestShutdown();
 
@@ -145,20 +375,29 @@ public class XConnectorEpoll implements Runnable {
             closeFd(client.shutdownFd);
         }
         else removeFdFromEpoll(epollFd, client.clientSocket.fd);
+        synchronized (connectedClients) {
+            connectedClients.remove(client.clientSocket.fd);
+        }
         closeFd(client.clientSocket.fd);
-        connectedClients.remove(client.clientSocket.fd);
+        client.releaseIOStreams();
     }
 
     private void shutdown() {
-        while (connectedClients.size() > 0) {
-            Client client = connectedClients.valueAt(connectedClients.size()-1);
+        while (true) {
+            Client client;
+            synchronized (connectedClients) {
+                if (connectedClients.size() == 0) break;
+                client = connectedClients.valueAt(connectedClients.size()-1);
+            }
             killConnection(client);
         }
 
         removeFdFromEpoll(epollFd, serverFd);
         removeFdFromEpoll(epollFd, shutdownFd);
+        removeFdFromEpoll(epollFd, wakeupFd);
         closeFd(serverFd);
         closeFd(shutdownFd);
+        closeFd(wakeupFd);
         closeFd(epollFd);
     }
 
@@ -178,6 +417,14 @@ public class XConnectorEpoll implements Runnable {
         this.initialOutputBufferCapacity = initialOutputBufferCapacity;
     }
 
+    public int getOutputHighWaterMark() {
+        return outputHighWaterMark;
+    }
+
+    public void setOutputHighWaterMark(int outputHighWaterMark) {
+        this.outputHighWaterMark = outputHighWaterMark;
+    }
+
     public boolean isMultithreadedClients() {
         return multithreadedClients;
     }
@@ -186,6 +433,18 @@ public class XConnectorEpoll implements Runnable {
         this.multithreadedClients = multithreadedClients;
     }
 
+    public boolean isShardedClients() {
+        return !multithreadedClients && clientShardCount > 0;
+    }
+
+    public int getClientShardCount() {
+        return clientShardCount;
+    }
+
+    public void setClientShardCount(int clientShardCount) {
+        this.clientShardCount = Math.max(clientShardCount, 0);
+    }
+
     public boolean isCanReceiveAncillaryMessages() {
         return canReceiveAncillaryMessages;
     }
@@ -209,13 +468,15 @@ public class XConnectorEpoll implements Runnable {
 
     private native int createEventFd();
 
-    private native boolean doEpollIndefinitely(int epollFd, int serverFd, boolean addClientToEpoll);
+    private native int doEpollIndefinitely(int epollFd, int serverFd, boolean addClientToEpoll, boolean oneShot, int[] readyEvents);
 
     private native boolean addFdToEpoll(int epollFd, int fd);
 
+    private native boolean modifyFdInEpoll(int epollFd, int fd, int events);
+
     private native void removeFdFromEpoll(int epollFd, int fd);
 
-    private native boolean waitForSocketRead(int clientFd, int shutdownFd);
+    private native int waitForSocketRead(int clientFd, int shutdownFd);
 
     private native int createAFUnixSocket(String path);
 }
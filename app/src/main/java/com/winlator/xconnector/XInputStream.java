@@ -7,29 +7,40 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 public class XInputStream {
+    private static final byte SHRINK_AFTER_IDLE_READS = 64;
     private ByteBuffer activeBuffer;
     private ByteBuffer buffer;
     public final ClientSocket clientSocket;
+    private final DirectBufferPool bufferPool;
+    private final int initialCapacity;
+    private byte idleReadCount = 0;
+    private byte[] stringBuffer = new byte[64];
 
     public XInputStream(int initialCapacity) {
         this(null, initialCapacity);
     }
 
     public XInputStream(ClientSocket clientSocket, int initialCapacity) {
+        this(clientSocket, initialCapacity, null);
+    }
+
+    public XInputStream(ClientSocket clientSocket, int initialCapacity, DirectBufferPool bufferPool) {
         this.clientSocket = clientSocket;
-        this.buffer = ByteBuffer.allocateDirect(initialCapacity);
+        this.bufferPool = bufferPool;
+        this.initialCapacity = initialCapacity;
+        this.buffer = allocateBuffer(initialCapacity);
     }
 
     public int readMoreData(boolean canReceiveAncillaryMessages) throws IOException {
         if (activeBuffer != null) {
             if (!activeBuffer.hasRemaining()) {
                 buffer.clear();
+                shrinkInputBufferIfIdle();
             }
             else if (activeBuffer.position() > 0) {
-                int newLimit = buffer.position();
-                buffer.position(activeBuffer.position()).limit(newLimit);
                 buffer.compact();
             }
+            else buffer.position(buffer.limit()).limit(buffer.capacity());
             activeBuffer = null;
         }
 
@@ -37,10 +48,9 @@ public class XInputStream {
         int bytesRead = canReceiveAncillaryMessages ? clientSocket.recvAncillaryMsg(buffer) : clientSocket.read(buffer);
 
         if (bytesRead > 0) {
-            int position = buffer.position();
+            if (buffer.position() > buffer.capacity() / 4) idleReadCount = 0;
             buffer.flip();
-            activeBuffer = buffer.slice().order(buffer.order());
-            buffer.limit(buffer.capacity()).position(position);
+            activeBuffer = buffer;
         }
         return bytesRead;
     }
@@ -49,18 +59,39 @@ public class XInputStream {
         return clientSocket.getAncillaryFd();
     }
 
+    private ByteBuffer allocateBuffer(int capacity) {
+        return bufferPool != null ? bufferPool.acquire(capacity) : ByteBuffer.allocateDirect(capacity);
+    }
+
     private void growInputBufferIfNecessary() {
         if (buffer.position() == buffer.capacity()) {
-            ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.capacity() * 2).order(buffer.order());
-            buffer.rewind();
+            ByteBuffer newBuffer = allocateBuffer(buffer.capacity() * 2).order(buffer.order());
+            buffer.flip();
             newBuffer.put(buffer);
+            if (bufferPool != null) bufferPool.release(buffer);
             buffer = newBuffer;
+            idleReadCount = 0;
         }
     }
 
+    private void shrinkInputBufferIfIdle() {
+        if (buffer.capacity() <= initialCapacity) return;
+        if (++idleReadCount < SHRINK_AFTER_IDLE_READS) return;
+
+        ByteBuffer newBuffer = allocateBuffer(initialCapacity).order(buffer.order());
+        if (bufferPool != null) bufferPool.release(buffer);
+        buffer = newBuffer;
+        idleReadCount = 0;
+    }
+
+    public void release() {
+        if (bufferPool != null && buffer != null) bufferPool.release(buffer);
+        activeBuffer = null;
+        buffer = null;
+    }
+
     public void setByteOrder(ByteOrder byteOrder) {
         buffer.order(byteOrder);
-        if (activeBuffer != null) activeBuffer.order(byteOrder);
     }
 
     public int getActivePosition() {
@@ -115,9 +146,9 @@ public class XInputStream {
     }
 
     public String readString8(int length) {
-        byte[] bytes = new byte[length];
-        read(bytes);
-        String str = new String(bytes, XServer.LATIN1_CHARSET);
+        if (stringBuffer.length < length) stringBuffer = new byte[Math.max(length, stringBuffer.length * 2)];
+        activeBuffer.get(stringBuffer, 0, length);
+        String str = new String(stringBuffer, 0, length, XServer.LATIN1_CHARSET);
         if ((-length & 3) > 0) skip(-length & 3);
         return str;
     }
@@ -1,62 +1,96 @@
 package com.winlator.xconnector;
 
-import com.winlator.xserver.XServer;
-
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class XOutputStream {
     private static final byte[] ZERO = new byte[64];
+    private static final byte SHRINK_AFTER_IDLE_FLUSHES = 64;
     private ByteBuffer buffer;
     public final ClientSocket clientSocket;
     private final ReentrantLock lock = new ReentrantLock();
+    private final OutputStreamLock streamLock = new OutputStreamLock();
+    private final DirectBufferPool bufferPool;
+    private final int initialCapacity;
+    private byte idleFlushCount = 0;
     private int ancillaryFd = -1;
+    private static final byte MAX_PAYLOADS = 16;
+    private static final int MIN_PAYLOAD_SIZE = 4096;
+    private final ByteBuffer[] payloads = new ByteBuffer[MAX_PAYLOADS];
+    private final int[] payloadPositions = new int[MAX_PAYLOADS];
+    private byte payloadCount = 0;
+    private final ByteBuffer[] iovBuffers = new ByteBuffer[MAX_PAYLOADS * 2 + 1];
+    private final int[] iovOffsets = new int[MAX_PAYLOADS * 2 + 1];
+    private final int[] iovLengths = new int[MAX_PAYLOADS * 2 + 1];
+    private static final AtomicLong savedFlushCount = new AtomicLong();
+    private short flushDeferDepth = 0;
+    private boolean flushPending = false;
+    private static final int PENDING_BUFFER_SIZE = 65536;
+    private final ArrayDeque<ByteBuffer> pendingBuffers = new ArrayDeque<>();
+    private volatile int pendingBytes = 0;
+    private Runnable pendingDataListener;
+    private boolean released = false;
 
     public XOutputStream(int initialCapacity) {
         this(null, initialCapacity);
     }
 
     public XOutputStream(ClientSocket clientSocket, int initialCapacity) {
+        this(clientSocket, initialCapacity, null);
+    }
+
+    public XOutputStream(ClientSocket clientSocket, int initialCapacity, DirectBufferPool bufferPool) {
         this.clientSocket = clientSocket;
-        buffer = ByteBuffer.allocateDirect(initialCapacity);
+        this.bufferPool = bufferPool;
+        this.initialCapacity = initialCapacity;
+        buffer = allocateBuffer(initialCapacity);
     }
 
     public void setByteOrder(ByteOrder byteOrder) {
         buffer.order(byteOrder);
     }
 
+    public void setPendingDataListener(Runnable pendingDataListener) {
+        this.pendingDataListener = pendingDataListener;
+    }
+
+    public int getPendingBytes() {
+        return pendingBytes;
+    }
+
     public void setAncillaryFd(int ancillaryFd) {
         this.ancillaryFd = ancillaryFd;
     }
 
     public void writeByte(byte value) {
-        ensureSpaceIsAvailable(1);
-        buffer.put(value);
+        if (ensureSpaceIsAvailable(1)) buffer.put(value);
     }
 
     public void writeShort(short value) {
-        ensureSpaceIsAvailable(2);
-        buffer.putShort(value);
+        if (ensureSpaceIsAvailable(2)) buffer.putShort(value);
     }
 
     public void writeInt(int value) {
-        ensureSpaceIsAvailable(4);
-        buffer.putInt(value);
+        if (ensureSpaceIsAvailable(4)) buffer.putInt(value);
     }
 
     public void writeLong(long value) {
-        ensureSpaceIsAvailable(8);
-        buffer.putLong(value);
+        if (ensureSpaceIsAvailable(8)) buffer.putLong(value);
     }
 
     public void writeString8(String str) {
-        byte[] bytes = str.getBytes(XServer.LATIN1_CHARSET);
-        int length = -str.length() & 3;
-        ensureSpaceIsAvailable(bytes.length + length);
-        buffer.put(bytes);
-        if (length > 0) writePad(length);
+        int length = str.length();
+        int padLength = -length & 3;
+        if (!ensureSpaceIsAvailable(length + padLength)) return;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            buffer.put((byte)(c <= 0xff ? c : '?'));
+        }
+        if (padLength > 0) writePad(padLength);
     }
 
     public void write(byte[] data) {
@@ -64,13 +98,23 @@ public class XOutputStream {
     }
 
     public void write(byte[] data, int offset, int length) {
-        ensureSpaceIsAvailable(length);
-        buffer.put(data, offset, length);
+        if (ensureSpaceIsAvailable(length)) buffer.put(data, offset, length);
     }
 
     public void write(ByteBuffer data) {
-        ensureSpaceIsAvailable(data.remaining());
-        buffer.put(data);
+        if (ensureSpaceIsAvailable(data.remaining())) buffer.put(data);
+    }
+
+    public void writeByReference(ByteBuffer data) {
+        if (released) return;
+        if (!data.isDirect() || data.remaining() < MIN_PAYLOAD_SIZE || payloadCount == MAX_PAYLOADS) {
+            write(data);
+            return;
+        }
+
+        payloads[payloadCount] = data;
+        payloadPositions[payloadCount] = buffer.position();
+        payloadCount++;
     }
 
     public void writePad(int length) {
@@ -78,41 +122,237 @@ public class XOutputStream {
     }
 
     private void flush() throws IOException {
-        if (buffer.position() != 0) {
+        if (released) return;
+        if (payloadCount > 0) {
+            flushWithPayloads();
+        }
+        else if (buffer.position() != 0) {
             buffer.flip();
 
-            if (ancillaryFd != -1) {
-                clientSocket.sendAncillaryMsg(buffer, ancillaryFd);
+            try {
+                if (ancillaryFd != -1) {
+                    drainPendingData(false);
+                    clientSocket.sendAncillaryMsg(buffer, ancillaryFd);
+                }
+                else if (pendingDataListener != null) {
+                    if (pendingBuffers.isEmpty()) clientSocket.send(buffer, true);
+                    if (buffer.hasRemaining()) addPendingData(buffer);
+                }
+                else clientSocket.write(buffer);
+            }
+            finally {
                 ancillaryFd = -1;
+                int usedCapacity = buffer.limit();
+                buffer.clear();
+                shrinkOutputBufferIfIdle(usedCapacity);
+            }
+        }
+    }
+
+    private void addPendingData(ByteBuffer data) {
+        int length = data.remaining();
+        ByteBuffer last = pendingBuffers.peekLast();
+        if (last != null && last.capacity() - last.limit() >= length) {
+            int position = last.position();
+            last.position(last.limit()).limit(last.capacity());
+            last.put(data);
+            last.limit(last.position()).position(position);
+        }
+        else {
+            ByteBuffer pendingBuffer = allocateBuffer(Math.max(length, PENDING_BUFFER_SIZE));
+            pendingBuffer.put(data).flip();
+            pendingBuffers.add(pendingBuffer);
+        }
+
+        pendingBytes += length;
+        pendingDataListener.run();
+    }
+
+    private void drainPendingData(boolean nonBlocking) throws IOException {
+        if (released || pendingBuffers.isEmpty()) return;
+
+        int oldPendingBytes = pendingBytes;
+        while (!pendingBuffers.isEmpty()) {
+            ByteBuffer pendingBuffer = pendingBuffers.peekFirst();
+            pendingBytes -= clientSocket.send(pendingBuffer, nonBlocking);
+            if (pendingBuffer.hasRemaining()) {
+                if (nonBlocking) break;
+                continue;
+            }
+
+            pendingBuffers.pollFirst();
+            if (bufferPool != null) bufferPool.release(pendingBuffer);
+        }
+
+        if (pendingBytes != oldPendingBytes && pendingDataListener != null) pendingDataListener.run();
+    }
+
+    public void flushPendingData() throws IOException {
+        lock.lock();
+        try {
+            drainPendingData(true);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushWithPayloads() throws IOException {
+        int iovCount = 0;
+        int position = 0;
+        for (int i = 0; i < payloadCount; i++) {
+            if (payloadPositions[i] > position) {
+                iovBuffers[iovCount] = buffer;
+                iovOffsets[iovCount] = position;
+                iovLengths[iovCount++] = payloadPositions[i] - position;
+                position = payloadPositions[i];
             }
-            else clientSocket.write(buffer);
 
+            ByteBuffer payload = payloads[i];
+            iovBuffers[iovCount] = payload;
+            iovOffsets[iovCount] = payload.position();
+            iovLengths[iovCount++] = payload.remaining();
+        }
+
+        if (buffer.position() > position) {
+            iovBuffers[iovCount] = buffer;
+            iovOffsets[iovCount] = position;
+            iovLengths[iovCount++] = buffer.position() - position;
+        }
+
+        try {
+            boolean nonBlocking = pendingDataListener != null && ancillaryFd == -1;
+            int bytesWritten = 0;
+            if (!nonBlocking) {
+                drainPendingData(false);
+                clientSocket.writev(iovBuffers, iovOffsets, iovLengths, iovCount, ancillaryFd, false);
+            }
+            else if (pendingBuffers.isEmpty()) {
+                bytesWritten = clientSocket.writev(iovBuffers, iovOffsets, iovLengths, iovCount, -1, true);
+            }
+
+            if (nonBlocking) {
+                for (int i = 0; i < iovCount; i++) {
+                    if (bytesWritten >= iovLengths[i]) {
+                        bytesWritten -= iovLengths[i];
+                        continue;
+                    }
+
+                    ByteBuffer data = iovBuffers[i].duplicate();
+                    data.limit(iovOffsets[i] + iovLengths[i]).position(iovOffsets[i] + bytesWritten);
+                    addPendingData(data);
+                    bytesWritten = 0;
+                }
+            }
+        }
+        finally {
+            for (int i = 0; i < payloadCount; i++) payloads[i] = null;
+            for (int i = 0; i < iovCount; i++) iovBuffers[i] = null;
+            payloadCount = 0;
+            ancillaryFd = -1;
+
+            int usedCapacity = buffer.position();
             buffer.clear();
+            shrinkOutputBufferIfIdle(usedCapacity);
         }
     }
 
     public XStreamLock lock() {
-        return new OutputStreamLock();
+        lock.lock();
+        return streamLock;
     }
 
-    private void ensureSpaceIsAvailable(int length) {
+    public void deferFlush() {
+        lock.lock();
+        flushDeferDepth++;
+        lock.unlock();
+    }
+
+    public void resumeFlush() throws IOException {
+        lock.lock();
+        try {
+            if (flushDeferDepth > 0 && --flushDeferDepth == 0 && flushPending) {
+                flushPending = false;
+                flush();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public static long getSavedFlushCount() {
+        return savedFlushCount.get();
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            if (released) return;
+            released = true;
+            if (bufferPool != null) {
+                bufferPool.release(buffer);
+                for (ByteBuffer pendingBuffer : pendingBuffers) bufferPool.release(pendingBuffer);
+            }
+            buffer = ByteBuffer.allocateDirect(0).order(buffer.order());
+            pendingBuffers.clear();
+            pendingBytes = 0;
+            for (int i = 0; i < payloadCount; i++) payloads[i] = null;
+            payloadCount = 0;
+            ancillaryFd = -1;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private ByteBuffer allocateBuffer(int capacity) {
+        return bufferPool != null ? bufferPool.acquire(capacity) : ByteBuffer.allocateDirect(capacity);
+    }
+
+    private boolean ensureSpaceIsAvailable(int length) {
+        if (released) return false;
         int position = buffer.position();
-        if ((buffer.capacity() - position) >= length) return;
-        ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.capacity() + length).order(buffer.order());
-        buffer.rewind();
-        newBuffer.put(buffer).position(position);
+        if ((buffer.capacity() - position) >= length) return true;
+        int newCapacity = Math.max(buffer.capacity() * 2, position + length);
+        ByteBuffer newBuffer = allocateBuffer(newCapacity).order(buffer.order());
+        buffer.flip();
+        newBuffer.put(buffer);
+        if (bufferPool != null) bufferPool.release(buffer);
         buffer = newBuffer;
+        idleFlushCount = 0;
+        return true;
     }
 
-    private class OutputStreamLock implements XStreamLock {
-        public OutputStreamLock() {
-            lock.lock();
+    private void shrinkOutputBufferIfIdle(int usedCapacity) {
+        if (buffer.capacity() <= initialCapacity) return;
+        if (usedCapacity > buffer.capacity() / 4) {
+            idleFlushCount = 0;
+            return;
         }
+        if (++idleFlushCount < SHRINK_AFTER_IDLE_FLUSHES) return;
+
+        ByteBuffer newBuffer = allocateBuffer(initialCapacity).order(buffer.order());
+        if (bufferPool != null) bufferPool.release(buffer);
+        buffer = newBuffer;
+        idleFlushCount = 0;
+    }
+
+    private class OutputStreamLock implements XStreamLock {
 
         @Override
         public void close() throws IOException {
             try {
-                flush();
+                if (flushDeferDepth > 0 && payloadCount == 0 && ancillaryFd == -1) {
+                    if (flushPending) {
+                        savedFlushCount.incrementAndGet();
+                    }
+                    else flushPending = true;
+                }
+                else {
+                    flushPending = false;
+                    flush();
+                }
             }
             finally {
                 lock.unlock();
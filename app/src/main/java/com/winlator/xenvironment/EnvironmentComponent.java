@@ -1,9 +1,16 @@
 package com.winlator.xenvironment;
 
 public abstract class EnvironmentComponent {
+    private static final Class<?>[] NO_DEPENDENCIES = new Class<?>[0];
     protected XEnvironment environment;
 
+    public Class<?>[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    public void prepare() {}
+
     public abstract void start();
 
     public abstract void stop();
-}
\ No newline at end of file
+}
@@ -1,18 +1,44 @@
 package com.winlator.xenvironment;
 
 import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.winlator.core.FileUtils;
 import com.winlator.xenvironment.components.GuestProgramLauncherComponent;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class XEnvironment implements Iterable<EnvironmentComponent> {
     private final Context context;
     private final ImageFs imageFs;
     private final ArrayList<EnvironmentComponent> components = new ArrayList<>();
+    private final ArrayList<StartupEvent> startupTimeline = new ArrayList<>();
+
+    public static class StartupEvent {
+        public final String name;
+        public final long startTime;
+        public final long readyTime;
+
+        private StartupEvent(String name, long startTime, long readyTime) {
+            this.name = name;
+            this.startTime = startTime;
+            this.readyTime = readyTime;
+        }
+
+        public long getDuration() {
+            return readyTime - startTime;
+        }
+    }
 
     public XEnvironment(Context context, ImageFs imageFs) {
         this.context = context;
@@ -55,7 +81,67 @@ public class XEnvironment implements Iterable<EnvironmentComponent> {
 
     public void startEnvironmentComponents() {
         FileUtils.clear(getTmpDir());
-        for (EnvironmentComponent environmentComponent : this) environmentComponent.start();
+        synchronized (startupTimeline) {
+            startupTimeline.clear();
+        }
+        if (components.isEmpty()) return;
+
+        final long baseTime = SystemClock.elapsedRealtime();
+        final HashMap<Class<?>, CountDownLatch> readyLatches = new HashMap<>();
+        final ConcurrentHashMap<Class<?>, Exception> failures = new ConcurrentHashMap<>();
+        for (EnvironmentComponent environmentComponent : components) readyLatches.put(environmentComponent.getClass(), new CountDownLatch(1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(components.size());
+        for (EnvironmentComponent environmentComponent : components) {
+            executor.execute(() -> {
+                long startTime = SystemClock.elapsedRealtime() - baseTime;
+                try {
+                    environmentComponent.prepare();
+                    for (Class<?> dependency : environmentComponent.getDependencies()) {
+                        CountDownLatch readyLatch = readyLatches.get(dependency);
+                        if (readyLatch == null) continue;
+                        readyLatch.await();
+                        Exception failure = failures.get(dependency);
+                        if (failure != null) throw new IllegalStateException(dependency.getSimpleName()+" failed to start", failure);
+                    }
+                    environmentComponent.start();
+                }
+                catch (Exception e) {
+                    failures.put(environmentComponent.getClass(), e);
+                    Log.e("XEnvironment", "Error starting "+environmentComponent.getClass().getSimpleName(), e);
+                }
+                finally {
+                    long readyTime = SystemClock.elapsedRealtime() - baseTime;
+                    synchronized (startupTimeline) {
+                        startupTimeline.add(new StartupEvent(environmentComponent.getClass().getSimpleName(), startTime, readyTime));
+                    }
+                    readyLatches.get(environmentComponent.getClass()).countDown();
+                }
+            });
+        }
+        executor.shutdown();
+
+        try {
+            for (CountDownLatch readyLatch : readyLatches.values()) readyLatch.await();
+        }
+        catch (InterruptedException e) {}
+
+        synchronized (startupTimeline) {
+            for (StartupEvent event : startupTimeline) {
+                Log.d("XEnvironment", event.name+": start="+event.startTime+"ms ready="+event.readyTime+"ms duration="+event.getDuration()+"ms");
+            }
+        }
+
+        for (EnvironmentComponent environmentComponent : components) {
+            Exception failure = failures.get(environmentComponent.getClass());
+            if (failure != null) throw failure instanceof RuntimeException ? (RuntimeException)failure : new RuntimeException(failure);
+        }
+    }
+
+    public List<StartupEvent> getStartupTimeline() {
+        synchronized (startupTimeline) {
+            return Collections.unmodifiableList(new ArrayList<>(startupTimeline));
+        }
     }
 
     public void stopEnvironmentComponents() {
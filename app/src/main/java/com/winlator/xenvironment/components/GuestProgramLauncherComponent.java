@@ -31,6 +31,7 @@ public class GuestProgramLauncherComponent extends EnvironmentComponent {
     private Callback<Integer> terminationCallback;
     private static final Object lock = new Object();
     private boolean wow64Mode = true;
+    private boolean prepared = false;
 
     private final ContentsManager contentsManager;
     private final ContentProfile wineProfile;
@@ -46,11 +47,25 @@ public class GuestProgramLauncherComponent extends EnvironmentComponent {
         wineProfile = null;
     }
 
+    @Override
+    public Class<?>[] getDependencies() {
+        return new Class<?>[]{SysVSharedMemoryComponent.class, XServerComponent.class, NetworkInfoUpdateComponent.class, ALSAServerComponent.class, PulseAudioComponent.class, VirGLRendererComponent.class};
+    }
+
+    @Override
+    public void prepare() {
+        synchronized (lock) {
+            extractBox86_64Files();
+            prepared = true;
+        }
+    }
+
     @Override
     public void start() {
         synchronized (lock) {
             stop();
-            extractBox86_64Files();
+            if (!prepared) extractBox86_64Files();
+            prepared = false;
             pid = execGuestProgram();
         }
     }
@@ -6,11 +6,13 @@ import com.winlator.xconnector.UnixSocketConfig;
 import com.winlator.xserver.XClientConnectionHandler;
 import com.winlator.xserver.XClientRequestHandler;
 import com.winlator.xserver.XServer;
+import com.winlator.xserver.extensions.PresentExtension;
 
 public class XServerComponent extends EnvironmentComponent {
     private XConnectorEpoll connector;
     private final XServer xServer;
     private final UnixSocketConfig socketConfig;
+    private int clientShardCount = 0;
 
     public XServerComponent(XServer xServer, UnixSocketConfig socketConfig) {
         this.xServer = xServer;
@@ -23,6 +25,7 @@ public class XServerComponent extends EnvironmentComponent {
         connector = new XConnectorEpoll(socketConfig, new XClientConnectionHandler(xServer), new XClientRequestHandler());
         connector.setInitialInputBufferCapacity(262144);
         connector.setCanReceiveAncillaryMessages(true);
+        connector.setClientShardCount(clientShardCount);
         connector.start();
     }
 
@@ -32,9 +35,21 @@ public class XServerComponent extends EnvironmentComponent {
             connector.stop();
             connector = null;
         }
+        xServer.stopEventFlush();
+
+        PresentExtension presentExtension = xServer.getExtension(PresentExtension.MAJOR_OPCODE);
+        if (presentExtension != null) presentExtension.destroyFrameClock();
     }
 
     public XServer getXServer() {
         return xServer;
     }
+
+    public int getClientShardCount() {
+        return clientShardCount;
+    }
+
+    public void setClientShardCount(int clientShardCount) {
+        this.clientShardCount = clientShardCount;
+    }
 }
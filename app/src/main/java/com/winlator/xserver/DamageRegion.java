@@ -0,0 +1,103 @@
+package com.winlator.xserver;
+
+public class DamageRegion {
+    public static final byte MAX_RECTS = 8;
+    private final short width;
+    private final short height;
+    private final short[] rects = new short[MAX_RECTS * 4];
+    private byte count = 0;
+    private boolean full = false;
+
+    public DamageRegion(short width, short height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public synchronized void add(int x, int y, int width, int height) {
+        if (full) return;
+        int x1 = Math.max(x, 0);
+        int y1 = Math.max(y, 0);
+        int x2 = Math.min(x + width, this.width);
+        int y2 = Math.min(y + height, this.height);
+        if (x2 <= x1 || y2 <= y1) return;
+
+        if (x1 == 0 && y1 == 0 && x2 == this.width && y2 == this.height) {
+            addAll();
+            return;
+        }
+
+        int bestIndex = -1;
+        int bestGrowth = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int growth = getMergeGrowth(i, x1, y1, x2, y2);
+            if (growth < bestGrowth) {
+                bestGrowth = growth;
+                bestIndex = i;
+            }
+        }
+
+        if (bestIndex != -1 && (bestGrowth <= 0 || count == MAX_RECTS)) {
+            merge(bestIndex, x1, y1, x2, y2);
+        }
+        else {
+            int j = count * 4;
+            rects[j+0] = (short)x1;
+            rects[j+1] = (short)y1;
+            rects[j+2] = (short)x2;
+            rects[j+3] = (short)y2;
+            count++;
+        }
+    }
+
+    public synchronized void addAll() {
+        full = true;
+        count = 0;
+    }
+
+    public synchronized void clear() {
+        full = false;
+        count = 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return !full && count == 0;
+    }
+
+    public synchronized boolean isFull() {
+        return full;
+    }
+
+    public synchronized int getArea() {
+        if (full) return width * height;
+        int area = 0;
+        for (int i = 0, j = 0; i < count; i++, j += 4) area += (rects[j+2] - rects[j+0]) * (rects[j+3] - rects[j+1]);
+        return area;
+    }
+
+    public synchronized int copyRects(short[] result) {
+        if (full) {
+            result[0] = 0;
+            result[1] = 0;
+            result[2] = width;
+            result[3] = height;
+            return 1;
+        }
+        System.arraycopy(rects, 0, result, 0, count * 4);
+        return count;
+    }
+
+    private int getMergeGrowth(int index, int x1, int y1, int x2, int y2) {
+        int j = index * 4;
+        int rx1 = rects[j+0], ry1 = rects[j+1], rx2 = rects[j+2], ry2 = rects[j+3];
+        int unionArea = (Math.max(x2, rx2) - Math.min(x1, rx1)) * (Math.max(y2, ry2) - Math.min(y1, ry1));
+        return unionArea - (rx2 - rx1) * (ry2 - ry1) - (x2 - x1) * (y2 - y1);
+    }
+
+    private void merge(int index, int x1, int y1, int x2, int y2) {
+        int j = index * 4;
+        rects[j+0] = (short)Math.min(x1, rects[j+0]);
+        rects[j+1] = (short)Math.min(y1, rects[j+1]);
+        rects[j+2] = (short)Math.max(x2, rects[j+2]);
+        rects[j+3] = (short)Math.max(y2, rects[j+3]);
+    }
+}
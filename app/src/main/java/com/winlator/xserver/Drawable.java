@@ -9,6 +9,7 @@ import com.winlator.renderer.Texture;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 public class Drawable extends XResource {
     public final short width;
@@ -16,6 +17,9 @@ public class Drawable extends XResource {
     public final Visual visual;
     private Texture texture = new Texture();
     private ByteBuffer data;
+    private ByteBuffer unflippedData;
+    private Runnable onUnflipListener;
+    private final DamageRegion damage;
     private Runnable onDrawListener;
     private Callback<Drawable> onDestroyListener;
     public final Object renderLock = new Object();
@@ -29,6 +33,7 @@ public class Drawable extends XResource {
         this.width = (short)width;
         this.height = (short)height;
         this.visual = visual;
+        this.damage = new DamageRegion(this.width, this.height);
         this.data = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
     }
 
@@ -53,6 +58,56 @@ public class Drawable extends XResource {
 
     public void setData(ByteBuffer data) {
         this.data = data;
+        damage.addAll();
+    }
+
+    public boolean isFlipped() {
+        return unflippedData != null;
+    }
+
+    public void flip(ByteBuffer flipData) {
+        synchronized (renderLock) {
+            if (unflippedData == null) unflippedData = data;
+            data = flipData;
+            markDamaged(0, 0, width, height);
+        }
+        if (onDrawListener != null) onDrawListener.run();
+    }
+
+    public void unflip() {
+        synchronized (renderLock) {
+            if (unflippedData == null) return;
+            copyArea((short)0, (short)0, (short)0, (short)0, width, height, width, width, data, unflippedData);
+            data.rewind();
+            unflippedData.rewind();
+            data = unflippedData;
+            unflippedData = null;
+            if (onUnflipListener != null) onUnflipListener.run();
+        }
+    }
+
+    public void setOnUnflipListener(Runnable onUnflipListener) {
+        this.onUnflipListener = onUnflipListener;
+    }
+
+    public DamageRegion getDamage() {
+        return damage;
+    }
+
+    private void markDamaged(int x, int y, int width, int height) {
+        damage.add(x, y, width, height);
+        texture.setNeedsUpdate(true);
+    }
+
+    private Object[] getRenderLocks(Drawable... drawables) {
+        Drawable[] ordered = new Drawable[drawables.length + 1];
+        ordered[0] = this;
+        System.arraycopy(drawables, 0, ordered, 1, drawables.length);
+        Arrays.sort(ordered, (a, b) -> a.id != b.id ? Integer.compare(a.id, b.id) : Integer.compare(System.identityHashCode(a), System.identityHashCode(b)));
+
+        Object[] locks = new Object[ordered.length];
+        for (int i = 0; i < ordered.length; i++) locks[i] = ordered[i].renderLock;
+        return locks;
     }
 
     private short getStride() {
@@ -76,38 +131,55 @@ public class Drawable extends XResource {
     }
 
     public void drawImage(short srcX, short srcY, short dstX, short dstY, short width, short height, byte depth, ByteBuffer data, short totalWidth, short totalHeight) {
-        if (depth == 1) {
-            drawBitmap(width, height, data, this.data);
-        }
-        else if (depth == 24 || depth == 32) {
-            dstX = (short)Mathf.clamp(dstX, 0, this.width-1);
-            dstY = (short)Mathf.clamp(dstY, 0, this.height-1);
-            if ((dstX + width) > this.width) width = (short)((this.width - dstX));
-            if ((dstY + height) > this.height) height = (short)((this.height - dstY));
-
-            copyArea(srcX, srcY, dstX, dstY, width, height, totalWidth, this.getStride(), data, this.data);
+        synchronized (renderLock) {
+            unflip();
+            if (depth == 1) {
+                drawBitmap(width, height, data, this.data);
+                markDamaged(0, 0, this.width, this.height);
+            }
+            else if (depth == 24 || depth == 32) {
+                dstX = (short)Mathf.clamp(dstX, 0, this.width-1);
+                dstY = (short)Mathf.clamp(dstY, 0, this.height-1);
+                if ((dstX + width) > this.width) width = (short)((this.width - dstX));
+                if ((dstY + height) > this.height) height = (short)((this.height - dstY));
+
+                copyArea(srcX, srcY, dstX, dstY, width, height, totalWidth, this.getStride(), data, this.data);
+                markDamaged(dstX, dstY, width, height);
+            }
+
+            this.data.rewind();
+            data.rewind();
         }
-
-        this.data.rewind();
-        data.rewind();
-
-        texture.setNeedsUpdate(true);
         if (onDrawListener != null) onDrawListener.run();
     }
 
     public ByteBuffer getImage(short x, short y, short width, short height) {
         ByteBuffer dstData = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+        getImage(x, y, width, height, dstData);
+        return dstData;
+    }
 
+    public void getImage(short x, short y, short width, short height, ByteBuffer dstData) {
         x = (short)Mathf.clamp(x, 0, this.width-1);
         y = (short)Mathf.clamp(y, 0, this.height-1);
         if ((x + width) > this.width) width = (short)(this.width - x);
         if ((y + height) > this.height) height = (short)(this.height - y);
 
-        copyArea(x, y, (short)0, (short)0, width, height, this.getStride(), width, this.data, dstData);
+        synchronized (renderLock) {
+            copyArea(x, y, (short)0, (short)0, width, height, this.getStride(), width, this.data, dstData);
+            this.data.rewind();
+        }
 
-        this.data.rewind();
         dstData.rewind();
-        return dstData;
+    }
+
+    public ByteBuffer getImageView(short x, short y, short width, short height) {
+        if (x == 0 && width == this.width && getStride() == this.width && y >= 0 && (y + height) <= this.height && data != null) {
+            ByteBuffer view = data.duplicate();
+            view.limit((y + height) * width * 4).position(y * width * 4);
+            return view.slice().order(data.order());
+        }
+        else return getImage(x, y, width, height);
     }
 
     public void copyArea(short srcX, short srcY, short dstX, short dstY, short width, short height, Drawable drawable) {
@@ -120,15 +192,21 @@ public class Drawable extends XResource {
         if ((dstX + width) > this.width) width = (short)(this.width - dstX);
         if ((dstY + height) > this.height) height = (short)(this.height - dstY);
 
-        if (gcFunction == GraphicsContext.Function.COPY) {
-            copyArea(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data);
-        }
-        else copyAreaOp(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data, gcFunction.ordinal());
+        Object[] locks = getRenderLocks(drawable);
+        synchronized (locks[0]) {
+            synchronized (locks[1]) {
+                unflip();
+                if (gcFunction == GraphicsContext.Function.COPY) {
+                    copyArea(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data);
+                }
+                else copyAreaOp(srcX, srcY, dstX, dstY, width, height, drawable.getStride(), this.getStride(), drawable.data, this.data, gcFunction.ordinal());
 
-        this.data.rewind();
-        drawable.data.rewind();
+                this.data.rewind();
+                drawable.data.rewind();
 
-        texture.setNeedsUpdate(true);
+                markDamaged(dstX, dstY, width, height);
+            }
+        }
         if (onDrawListener != null) onDrawListener.run();
     }
 
@@ -142,10 +220,13 @@ public class Drawable extends XResource {
         if ((x + width) > this.width) width = (short)((this.width - x));
         if ((y + height) > this.height) height = (short)((this.height - y));
 
-        fillRect((short)x, (short)y, (short)width, (short)height, color, this.getStride(), this.data);
-        this.data.rewind();
+        synchronized (renderLock) {
+            unflip();
+            fillRect((short)x, (short)y, (short)width, (short)height, color, this.getStride(), this.data);
+            this.data.rewind();
 
-        texture.setNeedsUpdate(true);
+            markDamaged(x, y, width, height);
+        }
         if (onDrawListener != null) onDrawListener.run();
     }
 
@@ -161,19 +242,31 @@ public class Drawable extends XResource {
         x1 = Mathf.clamp(x1, 0, width-lineWidth);
         y1 = Mathf.clamp(y1, 0, height-lineWidth);
 
-        drawLine((short)x0, (short)y0, (short)x1, (short)y1, color, (short)lineWidth, this.getStride(), this.data);
-
-        this.data.rewind();
+        synchronized (renderLock) {
+            unflip();
+            drawLine((short)x0, (short)y0, (short)x1, (short)y1, color, (short)lineWidth, this.getStride(), this.data);
+            this.data.rewind();
 
-        texture.setNeedsUpdate(true);
+            markDamaged(Math.min(x0, x1), Math.min(y0, y1), Math.abs(x1 - x0) + lineWidth, Math.abs(y1 - y0) + lineWidth);
+        }
         if (onDrawListener != null) onDrawListener.run();
     }
 
     public void drawAlphaMaskedBitmap(byte foreRed, byte foreGreen, byte foreBlue, byte backRed, byte backGreen, byte backBlue, Drawable srcDrawable, Drawable maskDrawable) {
-        drawAlphaMaskedBitmap(foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue, srcDrawable.data, maskDrawable.data, this.data);
-        this.data.rewind();
-
-        texture.setNeedsUpdate(true);
+        Object[] locks = getRenderLocks(srcDrawable, maskDrawable);
+        synchronized (locks[0]) {
+            synchronized (locks[1]) {
+                synchronized (locks[2]) {
+                    unflip();
+                    drawAlphaMaskedBitmap(foreRed, foreGreen, foreBlue, backRed, backGreen, backBlue, srcDrawable.data, maskDrawable.data, this.data);
+                    this.data.rewind();
+                    srcDrawable.data.rewind();
+                    maskDrawable.data.rewind();
+
+                    markDamaged(0, 0, width, height);
+                }
+            }
+        }
         if (onDrawListener != null) onDrawListener.run();
     }
 
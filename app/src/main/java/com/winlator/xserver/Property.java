@@ -2,12 +2,12 @@ package com.winlator.xserver;
 
 import androidx.annotation.NonNull;
 
-import com.winlator.core.ArrayUtils;
 import com.winlator.core.StringUtils;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class Property {
     public enum Mode {REPLACE, PREPEND, APPEND}
@@ -28,10 +28,16 @@ public class Property {
             return null;
         }
     }
+    private static final byte MIN_CAPACITY = 64;
     public final int name;
     public final int type;
     public final Format format;
     public ByteBuffer data;
+    private byte[] buffer;
+    private int start;
+    private int size;
+    private XClient owner;
+    private int chargedSize;
 
     public Property(int name, int type, Format format, byte[] data) {
         this.name = name;
@@ -41,15 +47,67 @@ public class Property {
     }
 
     public void replace(byte[] data) {
-        this.data = ByteBuffer.wrap(data != null ? data : new byte[0]).order(ByteOrder.LITTLE_ENDIAN);
+        buffer = data != null ? data : new byte[0];
+        start = 0;
+        size = buffer.length;
+        updateData();
     }
 
     public void prepend(byte[] values) {
-        replace(ArrayUtils.concat(values, this.data.array()));
+        if (values == null) return;
+        if (values.length > start) grow(values.length, 0);
+        start -= values.length;
+        System.arraycopy(values, 0, buffer, start, values.length);
+        size += values.length;
+        updateData();
     }
 
     public void append(byte[] values) {
-        replace(ArrayUtils.concat(this.data.array(), values));
+        if (values == null) return;
+        if (values.length > buffer.length - (start + size)) grow(0, values.length);
+        System.arraycopy(values, 0, buffer, start + size, values.length);
+        size += values.length;
+        updateData();
+    }
+
+    private void grow(int headroom, int tailroom) {
+        int capacity = Math.max(MIN_CAPACITY, (size + headroom + tailroom) * 2);
+        byte[] newBuffer = new byte[capacity];
+        int newStart = headroom > 0 ? capacity - size : 0;
+        System.arraycopy(buffer, start, newBuffer, newStart, size);
+        buffer = newBuffer;
+        start = newStart;
+    }
+
+    private void updateData() {
+        data = ByteBuffer.wrap(buffer, start, size).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    public void setOwner(XClient owner) {
+        if (this.owner != null) this.owner.releasePropertyMemory(chargedSize);
+        this.owner = owner;
+        chargedSize = owner != null ? size : 0;
+        if (owner != null) owner.chargePropertyMemory(chargedSize);
+    }
+
+    public XClient getOwner() {
+        return owner;
+    }
+
+    public int getChargedSize() {
+        return chargedSize;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(buffer, start, start + size);
     }
 
     @NonNull
@@ -59,9 +117,9 @@ public class Property {
         data.rewind();
         switch (type) {
             case "UTF8_STRING":
-                return StringUtils.fromANSIString(data.array(), StandardCharsets.UTF_8);
+                return StringUtils.fromANSIString(toByteArray(), StandardCharsets.UTF_8);
             case "STRING":
-                return StringUtils.fromANSIString(data.array(), XServer.LATIN1_CHARSET);
+                return StringUtils.fromANSIString(toByteArray(), XServer.LATIN1_CHARSET);
             case "ATOM":
                 return Atom.getName(data.getInt(0));
             default:
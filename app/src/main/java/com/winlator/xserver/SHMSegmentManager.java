@@ -31,4 +31,14 @@ public class SHMSegmentManager {
     public ByteBuffer getData(int xid) {
         return shmSegments.get(xid);
     }
+
+    public ByteBuffer acquireData(int xid) {
+        ByteBuffer data = shmSegments.get(xid);
+        if (data != null) sysVSharedMemory.retain(data);
+        return data;
+    }
+
+    public void releaseData(ByteBuffer data) {
+        sysVSharedMemory.detach(data);
+    }
 }
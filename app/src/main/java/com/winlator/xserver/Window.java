@@ -110,6 +110,8 @@ public class Window extends XResource {
     }
 
     public void removeProperty(int id) {
+        Property property = properties.get(id);
+        if (property != null) property.setOwner(null);
         properties.remove(id);
         sendEvent(Event.PROPERTY_CHANGE, new PropertyNotify(this, id, true));
     }
@@ -125,7 +127,10 @@ public class Window extends XResource {
             if (property.format == format) {
                 property.replace(data);
             }
-            else properties.put(atom, new Property(atom, type, format, data));
+            else {
+                property.setOwner(null);
+                properties.put(atom, (property = new Property(atom, type, format, data)));
+            }
             modified = true;
         }
         else if (property.format == format && property.type == type) {
@@ -406,6 +411,10 @@ public class Window extends XResource {
         }
     }
 
+    public void releasePropertyMemory() {
+        for (int i = 0; i < properties.size(); i++) properties.valueAt(i).setOwner(null);
+    }
+
     public String serializeProperties() {
         String result = "";
         for (int i = 0; i < properties.size(); i++) {
@@ -27,6 +27,7 @@ public class WindowManager extends XResourceManager {
     private Window focusedWindow;
     private FocusRevertTo focusRevertTo = FocusRevertTo.NONE;
     private final ArrayList<OnWindowModificationListener> onWindowModificationListeners = new ArrayList<>();
+    private final WindowSpatialIndex spatialIndex;
 
     public interface OnWindowModificationListener {
         default void onMapWindow(Window window) {}
@@ -51,6 +52,7 @@ public class WindowManager extends XResourceManager {
         rootWindow = new Window(id, drawable, 0, 0, screenInfo.width, screenInfo.height, null);
         rootWindow.attributes.setMapped(true);
         windows.put(id, rootWindow);
+        spatialIndex = new WindowSpatialIndex(rootWindow);
     }
 
     public Window getWindow(int id) {
@@ -83,6 +85,7 @@ public class WindowManager extends XResourceManager {
         windows.remove(window.id);
         if (window.isInputOutput()) drawableManager.removeDrawable(window.getContent().id);
         triggerOnFreeResourceListener(window);
+        window.releasePropertyMemory();
         if (window == focusedWindow) revertFocus();
         parent.removeChild(window);
     }
@@ -92,6 +95,7 @@ public class WindowManager extends XResourceManager {
             Window parent = window.getParent();
             if (!parent.hasEventListenerFor(Event.SUBSTRUCTURE_REDIRECT) || window.attributes.isOverrideRedirect()) {
                 window.attributes.setMapped(true);
+                spatialIndex.invalidate();
                 window.sendEvent(Event.STRUCTURE_NOTIFY, new MapNotify(window, window));
                 parent.sendEvent(Event.SUBSTRUCTURE_NOTIFY, new MapNotify(parent, window));
                 window.sendEvent(Event.EXPOSURE, new Expose(window));
@@ -104,6 +108,7 @@ public class WindowManager extends XResourceManager {
     public void unmapWindow(Window window) {
         if (rootWindow.id != window.id && window.attributes.isMapped()) {
             window.attributes.setMapped(false);
+            spatialIndex.invalidate();
             Window parent = window.getParent();
             window.sendEvent(Event.STRUCTURE_NOTIFY, new UnmapNotify(window, window));
             parent.sendEvent(Event.SUBSTRUCTURE_NOTIFY, new UnmapNotify(parent, window));
@@ -201,6 +206,7 @@ public class WindowManager extends XResourceManager {
             window.setY(y);
             window.setWidth(width);
             window.setHeight(height);
+            if (window.getMapState() == Window.MapState.VIEWABLE) spatialIndex.invalidate();
             triggerOnUpdateWindowGeometry(window, resized);
         }
 
@@ -219,6 +225,7 @@ public class WindowManager extends XResourceManager {
                 parent.moveChildBelow(window, sibling);
                 break;
         }
+        if (window.getMapState() == Window.MapState.VIEWABLE) spatialIndex.invalidate();
         triggerOnChangeWindowZOrder(window);
     }
 
@@ -276,16 +283,11 @@ public class WindowManager extends XResourceManager {
         Window oldParent = window.getParent();
         if (oldParent != null) oldParent.removeChild(window);
         newParent.addChild(window);
+        spatialIndex.invalidate();
     }
 
     public Window findPointWindow(short rootX, short rootY) {
-        return findPointWindow(rootWindow, rootX, rootY);
-    }
-
-    private Window findPointWindow(Window window, short rootX, short rootY) {
-        if (!(window.attributes.isMapped() && window.containsPoint(rootX, rootY))) return null;
-        Window child = window.getChildByCoords(rootX, rootY);
-        return child != null ? findPointWindow(child, rootX, rootY) : window;
+        return spatialIndex.findPointWindow(rootX, rootY);
     }
 
     public void addOnWindowModificationListener(OnWindowModificationListener onWindowModificationListener) {
@@ -0,0 +1,98 @@
+package com.winlator.xserver;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class WindowSpatialIndex {
+    private static final byte CELL_SIZE_SHIFT = 6;
+    private final Window rootWindow;
+    private final short width;
+    private final short height;
+    private final short columns;
+    private final int[][] cells;
+    private final int[] cellSizes;
+    private Window[] windows = new Window[64];
+    private short[] bounds = new short[windows.length * 4];
+    private int windowCount = 0;
+    private boolean dirty = true;
+
+    public WindowSpatialIndex(Window rootWindow) {
+        this.rootWindow = rootWindow;
+        width = rootWindow.getWidth();
+        height = rootWindow.getHeight();
+        columns = (short)(((width - 1) >> CELL_SIZE_SHIFT) + 1);
+        short rows = (short)(((height - 1) >> CELL_SIZE_SHIFT) + 1);
+        cells = new int[columns * rows][];
+        cellSizes = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) cells[i] = new int[8];
+    }
+
+    public synchronized void invalidate() {
+        dirty = true;
+    }
+
+    public synchronized Window findPointWindow(short x, short y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return null;
+        if (dirty) rebuild();
+
+        int cellIndex = (y >> CELL_SIZE_SHIFT) * columns + (x >> CELL_SIZE_SHIFT);
+        int[] indices = cells[cellIndex];
+        for (int i = cellSizes[cellIndex]-1; i >= 0; i--) {
+            int j = indices[i] * 4;
+            if (x >= bounds[j+0] && y >= bounds[j+1] && x < bounds[j+2] && y < bounds[j+3]) return windows[indices[i]];
+        }
+        return null;
+    }
+
+    public synchronized int getWindowCount() {
+        if (dirty) rebuild();
+        return windowCount;
+    }
+
+    private void rebuild() {
+        Arrays.fill(windows, 0, windowCount, null);
+        Arrays.fill(cellSizes, 0);
+        windowCount = 0;
+        addWindow(rootWindow, 0, 0, 0, 0, width, height);
+        dirty = false;
+    }
+
+    private void addWindow(Window window, int parentX, int parentY, int clipX1, int clipY1, int clipX2, int clipY2) {
+        if (!window.attributes.isMapped()) return;
+        int x = parentX + window.getX();
+        int y = parentY + window.getY();
+        int x1 = Math.max(x, clipX1);
+        int y1 = Math.max(y, clipY1);
+        int x2 = Math.min(x + window.getWidth(), clipX2);
+        int y2 = Math.min(y + window.getHeight(), clipY2);
+        if (x2 <= x1 || y2 <= y1) return;
+
+        if (windowCount == windows.length) {
+            windows = Arrays.copyOf(windows, windowCount * 2);
+            bounds = Arrays.copyOf(bounds, windowCount * 8);
+        }
+
+        int index = windowCount++;
+        windows[index] = window;
+        int j = index * 4;
+        bounds[j+0] = (short)x1;
+        bounds[j+1] = (short)y1;
+        bounds[j+2] = (short)x2;
+        bounds[j+3] = (short)y2;
+
+        int lastColumn = (x2 - 1) >> CELL_SIZE_SHIFT;
+        int lastRow = (y2 - 1) >> CELL_SIZE_SHIFT;
+        for (int row = y1 >> CELL_SIZE_SHIFT; row <= lastRow; row++) {
+            for (int column = x1 >> CELL_SIZE_SHIFT; column <= lastColumn; column++) {
+                int cellIndex = row * columns + column;
+                int size = cellSizes[cellIndex];
+                if (size == cells[cellIndex].length) cells[cellIndex] = Arrays.copyOf(cells[cellIndex], size * 2);
+                cells[cellIndex][size] = index;
+                cellSizes[cellIndex] = size + 1;
+            }
+        }
+
+        List<Window> children = window.getChildren();
+        for (int i = 0; i < children.size(); i++) addWindow(children.get(i), x, y, x1, y1, x2, y2);
+    }
+}
@@ -2,30 +2,40 @@ package com.winlator.xserver;
 
 import androidx.collection.ArrayMap;
 
+import com.winlator.xconnector.Client;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
 import com.winlator.xserver.events.Event;
+import com.winlator.xserver.events.MotionNotify;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class XClient implements XResourceManager.OnResourceLifecycleListener {
+    private static final byte MOTION_FLUSH_INTERVAL = 4;
     public final XServer xServer;
     private boolean authenticated = false;
     public final Integer resourceIDBase;
-    private short sequenceNumber = 0;
+    private volatile short sequenceNumber = 0;
     private int requestLength;
     private byte requestData;
     private int initialLength;
+    private final Client connection;
     private final XInputStream inputStream;
     private final XOutputStream outputStream;
     private final ArrayMap<Window, EventListener> eventListeners = new ArrayMap<>();
     private final ArrayList<XResource> resources = new ArrayList<>();
+    private final Object motionEventLock = new Object();
+    private volatile MotionNotify pendingMotionEvent;
+    private long lastMotionEventTime;
+    private final AtomicLong propertyMemoryUsage = new AtomicLong();
 
-    public XClient(XServer xServer, XInputStream inputStream, XOutputStream outputStream) {
+    public XClient(XServer xServer, Client connection) {
         this.xServer = xServer;
-        this.inputStream = inputStream;
-        this.outputStream = outputStream;
+        this.connection = connection;
+        this.inputStream = connection.getInputStream();
+        this.outputStream = connection.getOutputStream();
 
         try (XLock lock = xServer.lockAll()) {
             resourceIDBase = xServer.resourceIDs.get();
@@ -40,6 +50,22 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
         resources.add(resource);
     }
 
+    public boolean canAllocatePropertyMemory(int size) {
+        return propertyMemoryUsage.get() + size <= xServer.getPropertyMemoryBudget();
+    }
+
+    public void chargePropertyMemory(int size) {
+        propertyMemoryUsage.addAndGet(size);
+    }
+
+    public void releasePropertyMemory(int size) {
+        propertyMemoryUsage.addAndGet(-size);
+    }
+
+    public long getPropertyMemoryUsage() {
+        return propertyMemoryUsage.get();
+    }
+
     public void setEventListenerForWindow(Window window, Bitmask eventMask) {
         EventListener eventListener = eventListeners.get(window);
         if (eventListener != null) window.removeEventListener(eventListener);
@@ -50,6 +76,12 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     }
 
     public void sendEvent(Event event) {
+        if (event instanceof MotionNotify && xServer.isMotionCompression()) {
+            queueMotionEvent((MotionNotify)event);
+            return;
+        }
+
+        if (pendingMotionEvent != null) flushPendingMotionEvent();
         try {
             event.send(sequenceNumber, outputStream);
         }
@@ -58,11 +90,60 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
         }
     }
 
+    private void queueMotionEvent(MotionNotify event) {
+        synchronized (motionEventLock) {
+            if (pendingMotionEvent != null) {
+                pendingMotionEvent = event;
+                xServer.onEventCoalesced();
+                return;
+            }
+
+            long currentTime = System.currentTimeMillis();
+            long elapsedTime = currentTime - lastMotionEventTime;
+            if (elapsedTime >= MOTION_FLUSH_INTERVAL || elapsedTime < 0) {
+                lastMotionEventTime = currentTime;
+                try {
+                    event.send(sequenceNumber, outputStream);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            else {
+                pendingMotionEvent = event;
+                xServer.scheduleEventFlush(this::flushPendingMotionEvent, MOTION_FLUSH_INTERVAL - elapsedTime);
+            }
+        }
+    }
+
+    public void flushPendingMotionEvent() {
+        synchronized (motionEventLock) {
+            MotionNotify event = pendingMotionEvent;
+            if (event == null) return;
+            pendingMotionEvent = null;
+            lastMotionEventTime = System.currentTimeMillis();
+            try {
+                event.send(sequenceNumber, outputStream);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     public boolean isInterestedIn(int eventId, Window window) {
         EventListener eventListener = eventListeners.get(window);
         return eventListener != null && eventListener.isInterestedIn(eventId);
     }
 
+    public void suspendRequests() {
+        connection.suspend();
+    }
+
+    public void resumeRequests() {
+        connection.resume();
+    }
+
     public boolean isAuthenticated() {
         return authenticated;
     }
@@ -72,6 +153,10 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     }
 
     public void freeResources() {
+        synchronized (motionEventLock) {
+            pendingMotionEvent = null;
+        }
+
         try (XLock lock = xServer.lockAll()) {
             while (!resources.isEmpty()) {
                 XResource resource = resources.remove(resources.size()-1);
@@ -103,6 +188,7 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     }
 
     public void generateSequenceNumber() {
+        if (pendingMotionEvent != null) flushPendingMotionEvent();
         sequenceNumber++;
     }
 
@@ -5,6 +5,7 @@ import android.util.SparseArray;
 import com.winlator.core.CursorLocker;
 import com.winlator.renderer.GLRenderer;
 import com.winlator.winhandler.WinHandler;
+import com.winlator.xconnector.XOutputStream;
 import com.winlator.xserver.extensions.BigReqExtension;
 import com.winlator.xserver.extensions.DRI3Extension;
 import com.winlator.xserver.extensions.Extension;
@@ -14,7 +15,13 @@ import com.winlator.xserver.extensions.SyncExtension;
 
 import java.nio.charset.Charset;
 import java.util.EnumMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class XServer {
     public enum Lockable {WINDOW_MANAGER, PIXMAP_MANAGER, DRAWABLE_MANAGER, GRAPHIC_CONTEXT_MANAGER, INPUT_DEVICE, CURSOR_MANAGER, SHMSEGMENT_MANAGER}
@@ -38,13 +45,20 @@ public class XServer {
     private SHMSegmentManager shmSegmentManager;
     private GLRenderer renderer;
     private WinHandler winHandler;
-    private final EnumMap<Lockable, ReentrantLock> locks = new EnumMap<>(Lockable.class);
+    private final EnumMap<Lockable, ReentrantReadWriteLock> locks = new EnumMap<>(Lockable.class);
+    private static final Lockable[] LOCKABLES = Lockable.values();
+    private final AtomicLongArray lockContentionCounts = new AtomicLongArray(LOCKABLES.length);
+    private final MultiXLock[] lockTokens = new MultiXLock[2 << LOCKABLES.length];
     private boolean relativeMouseMovement = false;
+    private boolean motionCompression = true;
+    private long propertyMemoryBudget = 64L << 20;
+    private final AtomicLong coalescedEventCount = new AtomicLong();
+    private ScheduledExecutorService eventFlushExecutor;
 
     public XServer(ScreenInfo screenInfo) {
         this.screenInfo = screenInfo;
         cursorLocker = new CursorLocker(this);
-        for (Lockable lockable : Lockable.values()) locks.put(lockable, new ReentrantLock());
+        for (Lockable lockable : Lockable.values()) locks.put(lockable, new ReentrantReadWriteLock());
 
         pixmapManager = new PixmapManager();
         drawableManager = new DrawableManager(this);
@@ -67,6 +81,52 @@ public class XServer {
         this.relativeMouseMovement = relativeMouseMovement;
     }
 
+    public boolean isMotionCompression() {
+        return motionCompression;
+    }
+
+    public void setMotionCompression(boolean motionCompression) {
+        this.motionCompression = motionCompression;
+    }
+
+    public long getPropertyMemoryBudget() {
+        return propertyMemoryBudget;
+    }
+
+    public void setPropertyMemoryBudget(long propertyMemoryBudget) {
+        this.propertyMemoryBudget = propertyMemoryBudget;
+    }
+
+    public long getCoalescedEventCount() {
+        return coalescedEventCount.get();
+    }
+
+    public long getSavedSyscallCount() {
+        return coalescedEventCount.get() + XOutputStream.getSavedFlushCount();
+    }
+
+    protected void onEventCoalesced() {
+        coalescedEventCount.incrementAndGet();
+    }
+
+    protected synchronized void scheduleEventFlush(Runnable callback, long delayMillis) {
+        if (eventFlushExecutor == null) {
+            eventFlushExecutor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "XEventFlush");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        eventFlushExecutor.schedule(callback, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopEventFlush() {
+        if (eventFlushExecutor != null) {
+            eventFlushExecutor.shutdownNow();
+            eventFlushExecutor = null;
+        }
+    }
+
     public GLRenderer getRenderer() {
         return renderer;
     }
@@ -91,46 +151,93 @@ public class XServer {
         this.shmSegmentManager = shmSegmentManager;
     }
 
-    private class SingleXLock implements XLock {
-        private final ReentrantLock lock;
-
-        private SingleXLock(Lockable lockable) {
-            this.lock = locks.get(lockable);
-            lock.lock();
-        }
-
-        @Override
-        public void close() {
-            lock.unlock();
-        }
+    private Lock getLock(Lockable lockable, boolean shared) {
+        ReentrantReadWriteLock lock = locks.get(lockable);
+        return shared ? lock.readLock() : lock.writeLock();
     }
 
     private class MultiXLock implements XLock {
+        private final Lock[] lockObjects;
         private final Lockable[] lockables;
 
-        private MultiXLock(Lockable[] lockables) {
-            this.lockables = lockables;
-            for (Lockable lockable : lockables) locks.get(lockable).lock();
+        private MultiXLock(int mask, boolean shared) {
+            lockables = new Lockable[Integer.bitCount(mask)];
+            lockObjects = new Lock[lockables.length];
+            for (int i = 0, j = 0; i < LOCKABLES.length; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    lockables[j] = LOCKABLES[i];
+                    lockObjects[j++] = getLock(LOCKABLES[i], shared);
+                }
+            }
+        }
+
+        private XLock acquire() {
+            for (int i = 0; i < lockObjects.length; i++) {
+                if (!lockObjects[i].tryLock()) {
+                    lockContentionCounts.incrementAndGet(lockables[i].ordinal());
+                    lockObjects[i].lock();
+                }
+            }
+            return this;
         }
 
         @Override
         public void close() {
-            for (int i = lockables.length - 1; i >= 0; i--) {
-                locks.get(lockables[i]).unlock();
-            }
+            for (int i = lockObjects.length - 1; i >= 0; i--) lockObjects[i].unlock();
         }
     }
 
+    private XLock lock(int mask, boolean shared) {
+        int index = (mask << 1) | (shared ? 1 : 0);
+        MultiXLock lockToken = lockTokens[index];
+        if (lockToken == null) lockTokens[index] = lockToken = new MultiXLock(mask, shared);
+        return lockToken.acquire();
+    }
+
+    private static int getLockMask(Lockable... lockables) {
+        int mask = 0;
+        for (Lockable lockable : lockables) mask |= 1 << lockable.ordinal();
+        return mask;
+    }
+
     public XLock lock(Lockable lockable) {
-        return new SingleXLock(lockable);
+        return lock(1 << lockable.ordinal(), false);
+    }
+
+    public XLock lock(Lockable lockable1, Lockable lockable2) {
+        return lock((1 << lockable1.ordinal()) | (1 << lockable2.ordinal()), false);
+    }
+
+    public XLock lock(Lockable lockable1, Lockable lockable2, Lockable lockable3) {
+        return lock((1 << lockable1.ordinal()) | (1 << lockable2.ordinal()) | (1 << lockable3.ordinal()), false);
+    }
+
+    public XLock lock(Lockable lockable1, Lockable lockable2, Lockable lockable3, Lockable lockable4) {
+        return lock((1 << lockable1.ordinal()) | (1 << lockable2.ordinal()) | (1 << lockable3.ordinal()) | (1 << lockable4.ordinal()), false);
     }
 
     public XLock lock(Lockable... lockables) {
-        return new MultiXLock(lockables);
+        return lock(getLockMask(lockables), false);
+    }
+
+    public XLock lockShared(Lockable lockable) {
+        return lock(1 << lockable.ordinal(), true);
+    }
+
+    public XLock lockShared(Lockable lockable1, Lockable lockable2) {
+        return lock((1 << lockable1.ordinal()) | (1 << lockable2.ordinal()), true);
+    }
+
+    public XLock lockShared(Lockable... lockables) {
+        return lock(getLockMask(lockables), true);
     }
 
     public XLock lockAll() {
-        return new MultiXLock(Lockable.values());
+        return lock((1 << LOCKABLES.length) - 1, false);
+    }
+
+    public long getLockContentionCount(Lockable lockable) {
+        return lockContentionCounts.get(lockable.ordinal());
     }
 
     public Extension getExtensionByName(String name) {
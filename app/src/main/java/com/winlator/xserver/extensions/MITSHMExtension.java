@@ -7,26 +7,35 @@ import com.winlator.xconnector.XOutputStream;
 import com.winlator.xconnector.XStreamLock;
 import com.winlator.xserver.Drawable;
 import com.winlator.xserver.GraphicsContext;
+import com.winlator.xserver.Pixmap;
+import com.winlator.xserver.SHMSegmentManager;
 import com.winlator.xserver.XClient;
 import com.winlator.xserver.XLock;
 import com.winlator.xserver.XServer;
 import com.winlator.xserver.errors.BadDrawable;
 import com.winlator.xserver.errors.BadGraphicsContext;
+import com.winlator.xserver.errors.BadIdChoice;
 import com.winlator.xserver.errors.BadImplementation;
+import com.winlator.xserver.errors.BadMatch;
 import com.winlator.xserver.errors.BadSHMSegment;
+import com.winlator.xserver.errors.BadValue;
 import com.winlator.xserver.errors.XRequestError;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class MITSHMExtension implements Extension {
     public static final byte MAJOR_OPCODE = -101;
+    private static final byte Z_PIXMAP = 2;
 
     private static abstract class ClientOpcodes {
         private static final byte QUERY_VERSION = 0;
         private static final byte ATTACH = 1;
         private static final byte DETACH = 2;
         private static final byte PUT_IMAGE = 3;
+        private static final byte GET_IMAGE = 4;
+        private static final byte CREATE_PIXMAP = 5;
     }
 
     @Override
@@ -52,14 +61,15 @@ public class MITSHMExtension implements Extension {
     private static void queryVersion(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         try (XStreamLock lock = outputStream.lock()) {
             outputStream.writeByte(RESPONSE_CODE_SUCCESS);
-            outputStream.writeByte((byte)0);
+            outputStream.writeByte((byte)1);
             outputStream.writeShort(client.getSequenceNumber());
             outputStream.writeInt(0);
             outputStream.writeShort((short)1);
             outputStream.writeShort((short)1);
             outputStream.writeShort((short)0);
             outputStream.writeShort((short)0);
-            outputStream.writeByte((byte)0);
+            outputStream.writeByte(Z_PIXMAP);
+            outputStream.writePad(15);
         }
     }
 
@@ -106,6 +116,88 @@ public class MITSHMExtension implements Extension {
         drawable.drawImage(srcX, srcY, dstX, dstY, srcWidth, srcHeight, depth, data, totalWidth, totalHeight);
     }
 
+    private static void getImage(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+        int drawableId = inputStream.readInt();
+        short x = inputStream.readShort();
+        short y = inputStream.readShort();
+        short width = inputStream.readShort();
+        short height = inputStream.readShort();
+        inputStream.skip(4);
+        byte format = inputStream.readByte();
+        inputStream.skip(3);
+        int shmseg = inputStream.readInt();
+        int offset = inputStream.readInt();
+
+        if (format != Z_PIXMAP) throw new BadValue(format);
+
+        Drawable drawable = client.xServer.drawableManager.getDrawable(drawableId);
+        if (drawable == null) throw new BadDrawable(drawableId);
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > drawable.width || y + height > drawable.height) throw new BadMatch();
+
+        ByteBuffer data = client.xServer.getSHMSegmentManager().getData(shmseg);
+        if (data == null) throw new BadSHMSegment(shmseg);
+
+        int size = width * height * 4;
+        if (offset < 0 || (long)offset + size > data.capacity()) throw new BadValue(offset);
+
+        drawable.getImage(x, y, width, height, getSegmentView(data, offset, size));
+        int visualId = client.xServer.pixmapManager.getPixmap(drawableId) == null ? drawable.visual.id : 0;
+
+        try (XStreamLock lock = outputStream.lock()) {
+            outputStream.writeByte(RESPONSE_CODE_SUCCESS);
+            outputStream.writeByte(drawable.visual.depth);
+            outputStream.writeShort(client.getSequenceNumber());
+            outputStream.writeInt(0);
+            outputStream.writeInt(visualId);
+            outputStream.writeInt(size);
+            outputStream.writePad(16);
+        }
+    }
+
+    private static void createPixmap(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+        int pixmapId = inputStream.readInt();
+        int drawableId = inputStream.readInt();
+        short width = inputStream.readShort();
+        short height = inputStream.readShort();
+        byte depth = inputStream.readByte();
+        inputStream.skip(3);
+        int shmseg = inputStream.readInt();
+        int offset = inputStream.readInt();
+
+        if (!client.isValidResourceId(pixmapId)) throw new BadIdChoice(pixmapId);
+
+        Drawable drawable = client.xServer.drawableManager.getDrawable(drawableId);
+        if (drawable == null) throw new BadDrawable(drawableId);
+        if (depth != 24 && depth != 32) throw new BadMatch();
+
+        final SHMSegmentManager shmSegmentManager = client.xServer.getSHMSegmentManager();
+        ByteBuffer data = shmSegmentManager.getData(shmseg);
+        if (data == null) throw new BadSHMSegment(shmseg);
+
+        int size = width * height * 4;
+        if (offset < 0 || (long)offset + size > data.capacity()) throw new BadValue(offset);
+
+        Drawable backingStore = client.xServer.drawableManager.createDrawable(pixmapId, width, height, depth);
+        if (backingStore == null) throw new BadIdChoice(pixmapId);
+
+        final ByteBuffer segmentData = shmSegmentManager.acquireData(shmseg);
+        backingStore.setData(getSegmentView(segmentData, offset, size));
+        backingStore.setOnDestroyListener((pixmapDrawable) -> shmSegmentManager.releaseData(segmentData));
+
+        Pixmap pixmap = client.xServer.pixmapManager.createPixmap(backingStore);
+        if (pixmap == null) {
+            client.xServer.drawableManager.removeDrawable(pixmapId);
+            throw new BadIdChoice(pixmapId);
+        }
+        client.registerAsOwnerOfResource(pixmap);
+    }
+
+    private static ByteBuffer getSegmentView(ByteBuffer data, int offset, int size) {
+        ByteBuffer view = data.duplicate();
+        view.limit(offset + size).position(offset);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     @Override
     public void handleRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         int opcode = client.getRequestData();
@@ -128,6 +220,16 @@ public class MITSHMExtension implements Extension {
                     putImage(client, inputStream, outputStream);
                 }
                 break;
+            case ClientOpcodes.GET_IMAGE :
+                try (XLock lock = client.xServer.lock(XServer.Lockable.SHMSEGMENT_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+                    getImage(client, inputStream, outputStream);
+                }
+                break;
+            case ClientOpcodes.CREATE_PIXMAP :
+                try (XLock lock = client.xServer.lock(XServer.Lockable.SHMSEGMENT_MANAGER, XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+                    createPixmap(client, inputStream, outputStream);
+                }
+                break;
             default:
                 throw new BadImplementation();
         }
@@ -4,6 +4,8 @@ import static com.winlator.xserver.XClientRequestHandler.RESPONSE_CODE_SUCCESS;
 
 import android.util.SparseArray;
 
+import com.winlator.renderer.ChoreographerFrameClock;
+import com.winlator.renderer.FrameClock;
 import com.winlator.renderer.GPUImage;
 import com.winlator.renderer.Texture;
 import com.winlator.xconnector.XInputStream;
@@ -15,6 +17,8 @@ import com.winlator.xserver.Pixmap;
 import com.winlator.xserver.Window;
 import com.winlator.xserver.XClient;
 import com.winlator.xserver.XLock;
+import com.winlator.xserver.XResource;
+import com.winlator.xserver.XResourceManager;
 import com.winlator.xserver.XServer;
 import com.winlator.xserver.errors.BadImplementation;
 import com.winlator.xserver.errors.BadMatch;
@@ -25,21 +29,40 @@ import com.winlator.xserver.events.PresentCompleteNotify;
 import com.winlator.xserver.events.PresentIdleNotify;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
-public class PresentExtension implements Extension {
+public class PresentExtension implements Extension, FrameClock.OnFrameListener, XResourceManager.OnResourceLifecycleListener {
     public static final byte MAJOR_OPCODE = -103;
-    private static final int FAKE_INTERVAL = 1000000 / 60;
+    private static final byte OPTION_ASYNC = 1<<0;
+    private static final byte OPTION_COPY = 1<<1;
     public enum Kind {PIXMAP, MSC_NOTIFY}
     public enum Mode {COPY, FLIP, SKIP}
     private final SparseArray<Event> events = new SparseArray<>();
+    private final ArrayList<PresentRequest> pendingPresents = new ArrayList<>();
+    private final SparseArray<PresentRequest> flippedPresents = new SparseArray<>();
     private SyncExtension syncExtension;
+    private FrameClock frameClock;
+    private XServer xServer;
 
     private static abstract class ClientOpcodes {
         private static final byte QUERY_VERSION = 0;
         private static final byte PRESENT_PIXMAP = 1;
+        private static final byte NOTIFY_MSC = 2;
         private static final byte SELECT_INPUT = 3;
     }
 
+    private static class PresentRequest {
+        private Window window;
+        private Drawable content;
+        private Pixmap pixmap;
+        private int serial;
+        private short xOff;
+        private short yOff;
+        private int idleFence;
+        private int options;
+        private long targetMsc;
+    }
+
     private static class Event {
         private Window window;
         private XClient client;
@@ -67,6 +90,29 @@ public class PresentExtension implements Extension {
         return 0;
     }
 
+    public synchronized FrameClock getFrameClock() {
+        if (frameClock == null) setFrameClock(new ChoreographerFrameClock(60.0f));
+        return frameClock;
+    }
+
+    public synchronized void setFrameClock(FrameClock frameClock) {
+        if (this.frameClock == frameClock) return;
+        destroyFrameClock();
+        this.frameClock = frameClock;
+        frameClock.setOnFrameListener(this);
+        synchronized (pendingPresents) {
+            if (!pendingPresents.isEmpty()) frameClock.requestFrame();
+        }
+    }
+
+    public synchronized void destroyFrameClock() {
+        if (frameClock != null) {
+            frameClock.setOnFrameListener(null);
+            frameClock.destroy();
+            frameClock = null;
+        }
+    }
+
     private void sendIdleNotify(Window window, Pixmap pixmap, int serial, int idleFence) {
         if (idleFence != 0) syncExtension.setTriggered(idleFence);
 
@@ -105,6 +151,13 @@ public class PresentExtension implements Extension {
         }
     }
 
+    private static long getTargetMsc(long currentMsc, long targetMsc, long divisor, long remainder) {
+        if (currentMsc < targetMsc) return targetMsc;
+        if (divisor == 0) return currentMsc;
+        targetMsc = currentMsc - Long.remainderUnsigned(currentMsc, divisor) + remainder;
+        return targetMsc <= currentMsc ? targetMsc + divisor : targetMsc;
+    }
+
     private void presentPixmap(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         int windowId = inputStream.readInt();
         int pixmapId = inputStream.readInt();
@@ -114,6 +167,11 @@ public class PresentExtension implements Extension {
         short yOff = inputStream.readShort();
         inputStream.skip(8);
         int idleFence = inputStream.readInt();
+        int options = inputStream.readInt();
+        inputStream.skip(4);
+        long targetMsc = inputStream.readLong();
+        long divisor = inputStream.readLong();
+        long remainder = inputStream.readLong();
         inputStream.skip(client.getRemainingRequestLength());
 
         final Window window = client.xServer.windowManager.getWindow(windowId);
@@ -125,13 +183,152 @@ public class PresentExtension implements Extension {
         Drawable content = window.getContent();
         if (content.visual.depth != pixmap.drawable.visual.depth) throw new BadMatch();
 
-        long ust = System.nanoTime() / 1000;
-        long msc = ust / FAKE_INTERVAL;
+        PresentRequest request = new PresentRequest();
+        request.window = window;
+        request.pixmap = pixmap;
+        request.serial = serial;
+        request.xOff = xOff;
+        request.yOff = yOff;
+        request.idleFence = idleFence;
+        request.options = options;
+        queuePresent(request, targetMsc, divisor, remainder);
+    }
+
+    private void notifyMsc(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+        int windowId = inputStream.readInt();
+        int serial = inputStream.readInt();
+        inputStream.skip(4);
+        long targetMsc = inputStream.readLong();
+        long divisor = inputStream.readLong();
+        long remainder = inputStream.readLong();
+
+        Window window = client.xServer.windowManager.getWindow(windowId);
+        if (window == null) throw new BadWindow(windowId);
+
+        PresentRequest request = new PresentRequest();
+        request.window = window;
+        request.serial = serial;
+        request.options = OPTION_ASYNC;
+        queuePresent(request, targetMsc, divisor, remainder);
+    }
+
+    private void queuePresent(PresentRequest request, long targetMsc, long divisor, long remainder) {
+        FrameClock frameClock = getFrameClock();
+        long currentMsc = frameClock.getMsc();
+        request.targetMsc = getTargetMsc(currentMsc, targetMsc, divisor, remainder);
+
+        if (request.targetMsc <= currentMsc && (request.options & OPTION_ASYNC) != 0) {
+            executePresent(request, frameClock.getUst(), currentMsc);
+            return;
+        }
+
+        synchronized (pendingPresents) {
+            pendingPresents.add(request);
+        }
+        frameClock.requestFrame();
+    }
+
+    @Override
+    public void onFrame(long msc, long ust) {
+        try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+            synchronized (pendingPresents) {
+                for (int i = 0; i < pendingPresents.size(); i++) {
+                    PresentRequest request = pendingPresents.get(i);
+                    if (request.targetMsc > msc) continue;
+
+                    PresentRequest supersedingRequest = null;
+                    if (request.pixmap != null) {
+                        for (int j = i+1; j < pendingPresents.size(); j++) {
+                            PresentRequest nextRequest = pendingPresents.get(j);
+                            if (nextRequest.window == request.window && nextRequest.pixmap != null && nextRequest.targetMsc <= msc) {
+                                supersedingRequest = nextRequest;
+                                break;
+                            }
+                        }
+                    }
+
+                    if (supersedingRequest != null) {
+                        sendIdleNotify(request.window, request.pixmap, request.serial, request.idleFence);
+                        sendCompleteNotify(request.window, request.serial, Kind.PIXMAP, Mode.SKIP, ust, msc);
+                    }
+                    else executePresent(request, ust, msc);
+
+                    pendingPresents.remove(i--);
+                }
 
-        synchronized (content.renderLock) {
-            content.copyArea((short)0, (short)0, xOff, yOff, pixmap.drawable.width, pixmap.drawable.height, pixmap.drawable);
-            sendIdleNotify(window, pixmap, serial, idleFence);
-            sendCompleteNotify(window, serial, Kind.PIXMAP, Mode.COPY, ust, msc);
+                if (!pendingPresents.isEmpty()) frameClock.requestFrame();
+            }
+        }
+    }
+
+    private void executePresent(PresentRequest request, long ust, long msc) {
+        Window window = request.window;
+        if (request.pixmap == null) {
+            sendCompleteNotify(window, request.serial, Kind.MSC_NOTIFY, Mode.COPY, ust, msc);
+            return;
+        }
+
+        Drawable content = window.getContent();
+        Drawable source = request.pixmap.drawable;
+        boolean canFlip = (request.options & OPTION_COPY) == 0 && request.xOff == 0 && request.yOff == 0 &&
+                          source.width == content.width && source.height == content.height &&
+                          source.getData() != null && !(content.getTexture() instanceof GPUImage);
+
+        if (canFlip) {
+            synchronized (content.renderLock) {
+                request.content = content;
+                PresentRequest previousRequest;
+                synchronized (flippedPresents) {
+                    previousRequest = flippedPresents.get(window.id);
+                    flippedPresents.put(window.id, request);
+                }
+                if (previousRequest != null) sendIdleNotify(window, previousRequest.pixmap, previousRequest.serial, previousRequest.idleFence);
+
+                content.setOnUnflipListener(() -> onUnflip(window));
+                content.flip(source.getData());
+                sendCompleteNotify(window, request.serial, Kind.PIXMAP, Mode.FLIP, ust, msc);
+            }
+        }
+        else {
+            content.copyArea((short)0, (short)0, request.xOff, request.yOff, source.width, source.height, source);
+            sendIdleNotify(window, request.pixmap, request.serial, request.idleFence);
+            sendCompleteNotify(window, request.serial, Kind.PIXMAP, Mode.COPY, ust, msc);
+        }
+    }
+
+    private void onUnflip(Window window) {
+        PresentRequest request;
+        synchronized (flippedPresents) {
+            request = flippedPresents.get(window.id);
+            if (request == null) return;
+            flippedPresents.remove(window.id);
+        }
+        sendIdleNotify(window, request.pixmap, request.serial, request.idleFence);
+    }
+
+    @Override
+    public void onFreeResource(XResource resource) {
+        synchronized (pendingPresents) {
+            for (int i = pendingPresents.size()-1; i >= 0; i--) {
+                PresentRequest request = pendingPresents.get(i);
+                if (request.window == resource || request.pixmap == resource) pendingPresents.remove(i);
+            }
+        }
+
+        if (resource instanceof Pixmap) {
+            ArrayList<Drawable> flippedContents = new ArrayList<>();
+            synchronized (flippedPresents) {
+                for (int i = 0; i < flippedPresents.size(); i++) {
+                    PresentRequest request = flippedPresents.valueAt(i);
+                    if (request.pixmap == resource) flippedContents.add(request.content);
+                }
+            }
+            for (Drawable content : flippedContents) content.unflip();
+        }
+        else if (resource instanceof Window) {
+            synchronized (flippedPresents) {
+                flippedPresents.remove(resource.id);
+            }
         }
     }
 
@@ -145,6 +342,7 @@ public class PresentExtension implements Extension {
 
         if (GPUImage.isSupported() && !mask.isEmpty()) {
             Drawable content = window.getContent();
+            content.unflip();
             final Texture oldTexture = content.getTexture();
             client.xServer.getRenderer().xServerView.queueEvent(oldTexture::destroy);
             content.setTexture(new GPUImage(content.width, content.height));
@@ -175,16 +373,28 @@ public class PresentExtension implements Extension {
     public void handleRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         int opcode = client.getRequestData();
         if (syncExtension == null) syncExtension = client.xServer.getExtension(SyncExtension.MAJOR_OPCODE);
+        if (xServer == null) {
+            xServer = client.xServer;
+            try (XLock lock = xServer.lockAll()) {
+                xServer.windowManager.addOnResourceLifecycleListener(this);
+                xServer.pixmapManager.addOnResourceLifecycleListener(this);
+            }
+        }
 
         switch (opcode) {
             case ClientOpcodes.QUERY_VERSION :
                 queryVersion(client, inputStream, outputStream);
                 break;
             case ClientOpcodes.PRESENT_PIXMAP:
-                try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER)) {
+                try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
                     presentPixmap(client, inputStream, outputStream);
                 }
                 break;
+            case ClientOpcodes.NOTIFY_MSC:
+                try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER)) {
+                    notifyMsc(client, inputStream, outputStream);
+                }
+                break;
             case ClientOpcodes.SELECT_INPUT:
                 try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
                     selectInput(client, inputStream, outputStream);
@@ -1,6 +1,6 @@
 package com.winlator.xserver.extensions;
 
-import android.util.SparseBooleanArray;
+import android.util.SparseArray;
 
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
@@ -12,10 +12,12 @@ import com.winlator.xserver.errors.BadMatch;
 import com.winlator.xserver.errors.XRequestError;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 public class SyncExtension implements Extension {
     public static final byte MAJOR_OPCODE = -104;
-    private final SparseBooleanArray fences = new SparseBooleanArray();
+    private final SparseArray<Fence> fences = new SparseArray<>();
+    private long parkedWaiterCount = 0;
 
     private static abstract class ClientOpcodes {
         private static final byte CREATE_FENCE = 14;
@@ -25,6 +27,25 @@ public class SyncExtension implements Extension {
         private static final byte AWAIT_FENCE = 19;
     }
 
+    private static class Fence {
+        private boolean triggered;
+        private final ArrayList<FenceWaiter> waiters = new ArrayList<>();
+
+        private Fence(boolean triggered) {
+            this.triggered = triggered;
+        }
+    }
+
+    private static class FenceWaiter {
+        private final XClient client;
+        private final Fence[] fences;
+
+        private FenceWaiter(XClient client, Fence[] fences) {
+            this.client = client;
+            this.fences = fences;
+        }
+    }
+
     @Override
     public String getName() {
         return "SYNC";
@@ -47,7 +68,30 @@ public class SyncExtension implements Extension {
 
     public void setTriggered(int id) {
         synchronized (fences) {
-            if (fences.indexOfKey(id) >= 0) fences.put(id, true);
+            Fence fence = fences.get(id);
+            if (fence != null) trigger(fence);
+        }
+    }
+
+    public long getParkedWaiterCount() {
+        synchronized (fences) {
+            return parkedWaiterCount;
+        }
+    }
+
+    private void trigger(Fence fence) {
+        fence.triggered = true;
+        releaseWaiters(fence);
+    }
+
+    private void releaseWaiters(Fence fence) {
+        while (!fence.waiters.isEmpty()) {
+            FenceWaiter waiter = fence.waiters.remove(fence.waiters.size()-1);
+            for (Fence otherFence : waiter.fences) {
+                if (otherFence != fence) otherFence.waiters.remove(waiter);
+            }
+            parkedWaiterCount--;
+            waiter.client.resumeRequests();
         }
     }
 
@@ -61,58 +105,63 @@ public class SyncExtension implements Extension {
             boolean initiallyTriggered = inputStream.readByte() == 1;
             inputStream.skip(3);
 
-            fences.put(id, initiallyTriggered);
+            fences.put(id, new Fence(initiallyTriggered));
         }
     }
 
     private void triggerFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         synchronized (fences) {
             int id = inputStream.readInt();
-            if (fences.indexOfKey(id) < 0) throw new BadFence(id);
-            fences.put(id, true);
+            Fence fence = fences.get(id);
+            if (fence == null) throw new BadFence(id);
+            trigger(fence);
         }
     }
 
     private void resetFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         synchronized (fences) {
             int id = inputStream.readInt();
-            if (fences.indexOfKey(id) < 0) throw new BadFence(id);
+            Fence fence = fences.get(id);
+            if (fence == null) throw new BadFence(id);
+            if (!fence.triggered) throw new BadMatch();
 
-            boolean triggered = fences.get(id);
-            if (!triggered) throw new BadMatch();
-
-            fences.put(id, false);
+            fence.triggered = false;
         }
     }
 
     private void destroyFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         synchronized (fences) {
             int id = inputStream.readInt();
-            if (fences.indexOfKey(id) < 0) throw new BadFence(id);
+            Fence fence = fences.get(id);
+            if (fence == null) throw new BadFence(id);
             fences.delete(id);
+            releaseWaiters(fence);
         }
     }
 
     private void awaitFence(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         synchronized (fences) {
             int length = client.getRemainingRequestLength();
-            int[] ids = new int[length / 4];
+            Fence[] awaitedFences = new Fence[length / 4];
             int i = 0;
 
             while (length != 0) {
-                ids[i++] = inputStream.readInt();
+                int id = inputStream.readInt();
+                Fence fence = fences.get(id);
+                if (fence == null) throw new BadFence(id);
+                awaitedFences[i++] = fence;
                 length -= 4;
             }
 
-            boolean anyTriggered = false;
-            do {
-                for (int id : ids) {
-                    if (fences.indexOfKey(id) < 0) throw new BadFence(id);
-                    anyTriggered = fences.get(id);
-                    if (anyTriggered) break;
-                }
+            if (awaitedFences.length == 0) return;
+            for (Fence fence : awaitedFences) {
+                if (fence.triggered) return;
             }
-            while (!anyTriggered);
+
+            FenceWaiter waiter = new FenceWaiter(client, awaitedFences);
+            for (Fence fence : awaitedFences) fence.waiters.add(waiter);
+            parkedWaiterCount++;
+            client.suspendRequests();
         }
     }
 
@@ -78,18 +78,21 @@ public abstract class DrawRequests {
         Drawable drawable =  client.xServer.drawableManager.getDrawable(drawableId);
         if (drawable == null) throw new BadDrawable(drawableId);
         int visualId = client.xServer.pixmapManager.getPixmap(drawableId) == null ? drawable.visual.id : 0;
-        ByteBuffer data = drawable.getImage(x, y, width, height);
-        int length = data.limit();
-
-        try (XStreamLock lock = outputStream.lock()) {
-            outputStream.writeByte(RESPONSE_CODE_SUCCESS);
-            outputStream.writeByte(drawable.visual.depth);
-            outputStream.writeShort(client.getSequenceNumber());
-            outputStream.writeInt((length + 3) / 4);
-            outputStream.writeInt(visualId);
-            outputStream.writePad(20);
-            outputStream.write(data);
-            if ((-length & 3) > 0) outputStream.writePad(-length & 3);
+
+        synchronized (drawable.renderLock) {
+            ByteBuffer data = drawable.getImageView(x, y, width, height);
+            int length = data.remaining();
+
+            try (XStreamLock lock = outputStream.lock()) {
+                outputStream.writeByte(RESPONSE_CODE_SUCCESS);
+                outputStream.writeByte(drawable.visual.depth);
+                outputStream.writeShort(client.getSequenceNumber());
+                outputStream.writeInt((length + 3) / 4);
+                outputStream.writeInt(visualId);
+                outputStream.writePad(20);
+                outputStream.writeByReference(data);
+                if ((-length & 3) > 0) outputStream.writePad(-length & 3);
+            }
         }
     }
 
@@ -20,12 +20,14 @@ import com.winlator.xserver.Window;
 import com.winlator.xserver.WindowManager;
 import com.winlator.xserver.XClient;
 import com.winlator.xserver.errors.BadAccess;
+import com.winlator.xserver.errors.BadAlloc;
 import com.winlator.xserver.errors.BadMatch;
 import com.winlator.xserver.errors.BadWindow;
 import com.winlator.xserver.errors.XRequestError;
 import com.winlator.xserver.events.RawEvent;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public abstract class WindowRequests {
@@ -152,6 +154,11 @@ public abstract class WindowRequests {
         int length  = inputStream.readInt();
         int totalSize = length * (format >> 3);
 
+        Property oldProperty = window.getProperty(atom);
+        int newSize = oldProperty != null && mode != Property.Mode.REPLACE ? oldProperty.size() + totalSize : totalSize;
+        int releasedSize = oldProperty != null && oldProperty.getOwner() == client ? oldProperty.getChargedSize() : 0;
+        if (newSize > releasedSize && !client.canAllocatePropertyMemory(newSize - releasedSize)) throw new BadAlloc();
+
         byte[] data = null;
         if (totalSize > 0) {
             data = new byte[totalSize];
@@ -161,6 +168,7 @@ public abstract class WindowRequests {
 
         Property property = window.modifyProperty(atom, type, Property.Format.valueOf(format), mode, data);
         if (property == null) throw new BadMatch();
+        property.setOwner(client);
 
         client.xServer.windowManager.triggerOnModifyWindowProperty(window, property);
     }
@@ -208,11 +216,11 @@ public abstract class WindowRequests {
                 outputStream.writePad(12);
             }
             else {
-                byte[] data = property.data.array();
+                int size = property.data.limit();
                 int offset = longOffset * 4;
-                int length = Math.min(data.length - offset, longLength * 4);
+                int length = Math.min(size - offset, longLength * 4);
                 if (length < 0) throw new BadValue(longOffset);
-                bytesAfter = data.length - (offset + length);
+                bytesAfter = size - (offset + length);
 
                 outputStream.writeByte(RESPONSE_CODE_SUCCESS);
                 outputStream.writeByte(property.format.value);
@@ -222,7 +230,9 @@ public abstract class WindowRequests {
                 outputStream.writeInt(bytesAfter);
                 outputStream.writeInt(length / (property.format.value / 8));
                 outputStream.writePad(12);
-                outputStream.write(data, offset, length);
+                ByteBuffer data = property.data.duplicate();
+                data.limit(offset + length).position(offset);
+                outputStream.write(data);
                 if ((-length & 3) > 0) outputStream.writePad(-length & 3);
             }
         }
@@ -6,6 +6,7 @@
 #include <sys/socket.h>
 #include <sys/un.h>
 #include <sys/mman.h>
+#include <time.h>
 
 #define MIN_REQUEST_LENGTH 5
 
@@ -24,6 +25,10 @@
 #define DATA_TYPE_FLOATLE 3
 #define DATA_TYPE_FLOATBE 4
 
+#define RING_HEADER_SIZE 128
+#define RING_WRITE_POSITION 0
+#define RING_READ_POSITION 64
+
 #define ARRAY_SIZE(arr) (sizeof(arr) / sizeof(arr[0]))
 
 typedef struct snd_pcm_android_aserver {
@@ -34,8 +39,13 @@ typedef struct snd_pcm_android_aserver {
     void* buffer;
     int buffer_size;
     bool use_shm;
+    bool use_ring;
 } snd_pcm_android_aserver_t;
 
+static uint32_t* android_aserver_ring_position(snd_pcm_android_aserver_t* android_aserver, int offset) {
+    return (uint32_t*)((char*)android_aserver->buffer + offset);
+}
+
 static int android_aserver_recv_fd(int fd) {
     char zero = 0;
     struct iovec iovmsg = {.iov_base = &zero, .iov_len = 1};
@@ -156,7 +166,9 @@ static int android_aserver_prepare(snd_pcm_ioplug_t* io) {
             return -EINVAL;            
     }
     
-    int request_length = 10;
+    char use_ring = android_aserver->use_shm ? 1 : 0;
+    
+    int request_length = 11;
     char request_data[request_length + MIN_REQUEST_LENGTH];
     request_data[0] = REQUEST_CODE_PREPARE;
     memcpy(request_data + 1, &request_length, 4);
@@ -164,6 +176,7 @@ static int android_aserver_prepare(snd_pcm_ioplug_t* io) {
     memcpy(request_data + 6, &data_type, 1);
     memcpy(request_data + 7, &io->rate, 4);
     memcpy(request_data + 11, &io->buffer_size, 4);
+    memcpy(request_data + 15, &use_ring, 1);
     
     int res = write(android_aserver->fd, &request_data, request_length + MIN_REQUEST_LENGTH);
     if (res < 0) return -EINVAL;
@@ -174,15 +187,17 @@ static int android_aserver_prepare(snd_pcm_ioplug_t* io) {
             android_aserver->buffer_size = 0;            
         } 
         
+        android_aserver->use_ring = false;
         int fd = android_aserver_recv_fd(android_aserver->fd);
         if (fd >= 0) {
-            android_aserver->buffer_size = io->buffer_size * android_aserver->frame_bytes;
+            android_aserver->buffer_size = RING_HEADER_SIZE + io->buffer_size * android_aserver->frame_bytes;
             android_aserver->buffer = mmap(NULL, android_aserver->buffer_size, PROT_WRITE | PROT_READ, MAP_SHARED, fd, 0);
             
             if (android_aserver->buffer == MAP_FAILED) {
                 android_aserver->buffer_size = 0;
                 android_aserver->use_shm = false;
             }
+            else android_aserver->use_ring = true;
             close(fd);
         }
     }    
@@ -192,6 +207,11 @@ static int android_aserver_prepare(snd_pcm_ioplug_t* io) {
 
 static snd_pcm_sframes_t android_aserver_pointer(snd_pcm_ioplug_t* io) {
     snd_pcm_android_aserver_t* android_aserver = io->private_data;
+    
+    if (android_aserver->use_ring) {
+        android_aserver->position = __atomic_load_n(android_aserver_ring_position(android_aserver, RING_READ_POSITION), __ATOMIC_ACQUIRE);
+        return android_aserver->position;
+    }
 
     int request_length = 0;
     char request_data[MIN_REQUEST_LENGTH];
@@ -213,18 +233,38 @@ static snd_pcm_sframes_t android_aserver_transfer(snd_pcm_ioplug_t* io, const sn
     snd_pcm_android_aserver_t* android_aserver = io->private_data;
 
     char* data = (char*)areas->addr + (areas->first + areas->step * offset) / 8;
+    
+    if (android_aserver->use_ring) {
+        uint32_t* write_position = android_aserver_ring_position(android_aserver, RING_WRITE_POSITION);
+        uint32_t start = __atomic_load_n(write_position, __ATOMIC_RELAXED);
+        uint32_t used = start - __atomic_load_n(android_aserver_ring_position(android_aserver, RING_READ_POSITION), __ATOMIC_ACQUIRE);
+        if (used >= io->buffer_size) return 0;
+        if (size > io->buffer_size - used) size = io->buffer_size - used;
+        
+        char* ring_data = (char*)android_aserver->buffer + RING_HEADER_SIZE;
+        uint32_t ring_offset = start % io->buffer_size;
+        uint32_t first_part = io->buffer_size - ring_offset;
+        if (first_part > size) first_part = size;
+        
+        memcpy(ring_data + ring_offset * android_aserver->frame_bytes, data, first_part * android_aserver->frame_bytes);
+        memcpy(ring_data, data + first_part * android_aserver->frame_bytes, (size - first_part) * android_aserver->frame_bytes);
+        
+        __atomic_store_n(write_position, start + size, __ATOMIC_RELEASE);
+        return size;
+    }
 
     int request_length = size * android_aserver->frame_bytes;
     char request_data[MIN_REQUEST_LENGTH];
     request_data[0] = REQUEST_CODE_WRITE;
     memcpy(request_data + 1, &request_length, 4);
     
-    if (android_aserver->use_shm) memcpy(android_aserver->buffer, data, request_length);
+    bool use_shm = android_aserver->use_shm && android_aserver->buffer_size > 0;
+    if (use_shm) memcpy(android_aserver->buffer, data, request_length);
     
     int res = write(android_aserver->fd, &request_data, MIN_REQUEST_LENGTH);
     if (res < 0) return 0;
     
-    if (!android_aserver->use_shm) {
+    if (!use_shm) {
         res = write(android_aserver->fd, data, request_length);
         if (res < 0) return 0;
     }
@@ -234,6 +274,17 @@ static snd_pcm_sframes_t android_aserver_transfer(snd_pcm_ioplug_t* io, const sn
 
 static int android_aserver_drain(snd_pcm_ioplug_t* io) {
     snd_pcm_android_aserver_t* android_aserver = io->private_data;
+    
+    if (android_aserver->use_ring && io->state == SND_PCM_STATE_RUNNING) {
+        uint32_t* write_position = android_aserver_ring_position(android_aserver, RING_WRITE_POSITION);
+        uint32_t* read_position = android_aserver_ring_position(android_aserver, RING_READ_POSITION);
+        struct timespec delay = {.tv_sec = 0, .tv_nsec = 1000000};
+        int max_waits = (io->buffer_size * 1000) / io->rate + 100;
+        
+        while (max_waits-- > 0 && __atomic_load_n(read_position, __ATOMIC_ACQUIRE) != __atomic_load_n(write_position, __ATOMIC_RELAXED)) {
+            nanosleep(&delay, NULL);
+        }
+    }
 
     int request_length = 0;
     char request_data[MIN_REQUEST_LENGTH];
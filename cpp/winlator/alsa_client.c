@@ -1,10 +1,37 @@
 #include <aaudio/AAudio.h>
 #include <jni.h>
+#include <stdlib.h>
+#include <string.h>
 
 #define WAIT_COMPLETION_TIMEOUT 100 * 1000000L
+#define RING_HEADER_SIZE 128
+#define RING_WRITE_POSITION 0
+#define RING_READ_POSITION 64
 
 enum Format {U8, S16LE, S16BE, FLOATLE, FLOATBE};
 
+typedef struct ALSAStream {
+    AAudioStream *aaudioStream;
+    uint8_t *ring;
+    int32_t bufferSize;
+    int32_t frameBytes;
+    int32_t aaudioFrameBytes;
+} ALSAStream;
+
+static int getFrameBytes(int format, int8_t channelCount) {
+    switch (format) {
+        case FLOATLE:
+        case FLOATBE:
+            return channelCount * 4;
+        case U8:
+            return channelCount;
+        case S16LE:
+        case S16BE:
+        default:
+            return channelCount * 2;
+    }
+}
+
 static aaudio_format_t toAAudioFormat(int format) {
     switch (format) {
         case FLOATLE:
@@ -19,29 +46,70 @@ static aaudio_format_t toAAudioFormat(int format) {
     }
 }
 
-static AAudioStream *aaudioCreate(int32_t format, int8_t channelCount, int32_t sampleRate, int32_t bufferSize) {
+static aaudio_data_callback_result_t aaudioDataCallback(AAudioStream *aaudioStream, void *userData, void *audioData, int32_t numFrames) {
+    ALSAStream *stream = userData;
+    uint32_t *writePosition = (uint32_t*)(stream->ring + RING_WRITE_POSITION);
+    uint32_t *readPosition = (uint32_t*)(stream->ring + RING_READ_POSITION);
+    uint8_t *data = stream->ring + RING_HEADER_SIZE;
+
+    uint32_t start = __atomic_load_n(readPosition, __ATOMIC_RELAXED);
+    uint32_t available = __atomic_load_n(writePosition, __ATOMIC_ACQUIRE) - start;
+    if (available > stream->bufferSize) available = stream->bufferSize;
+
+    uint32_t numFramesRead = available < numFrames ? available : numFrames;
+    uint32_t offset = start % stream->bufferSize;
+    uint32_t firstPart = stream->bufferSize - offset;
+    if (firstPart > numFramesRead) firstPart = numFramesRead;
+
+    memcpy(audioData, data + offset * stream->frameBytes, firstPart * stream->frameBytes);
+    memcpy((uint8_t*)audioData + firstPart * stream->frameBytes, data, (numFramesRead - firstPart) * stream->frameBytes);
+
+    int32_t bytesRead = numFramesRead * stream->frameBytes;
+    int32_t totalBytes = numFrames * stream->aaudioFrameBytes;
+    if (bytesRead < totalBytes) memset((uint8_t*)audioData + bytesRead, 0, totalBytes - bytesRead);
+
+    __atomic_store_n(readPosition, start + numFramesRead, __ATOMIC_RELEASE);
+    return AAUDIO_CALLBACK_RESULT_CONTINUE;
+}
+
+static ALSAStream *aaudioCreate(int32_t format, int8_t channelCount, int32_t sampleRate, int32_t bufferSize, uint8_t *ring) {
     aaudio_result_t result;
     AAudioStreamBuilder *builder;
-    AAudioStream *stream;
+    ALSAStream *stream = calloc(1, sizeof(ALSAStream));
+    if (!stream) return NULL;
+
+    stream->ring = ring;
+    stream->bufferSize = bufferSize;
+    stream->frameBytes = getFrameBytes(format, channelCount);
 
     result = AAudio_createStreamBuilder(&builder);
-    if (result != AAUDIO_OK) return NULL;
+    if (result != AAUDIO_OK) {
+        free(stream);
+        return NULL;
+    }
 
     AAudioStreamBuilder_setPerformanceMode(builder, AAUDIO_PERFORMANCE_MODE_LOW_LATENCY);
     AAudioStreamBuilder_setFormat(builder, toAAudioFormat(format));
     AAudioStreamBuilder_setChannelCount(builder, channelCount);
     AAudioStreamBuilder_setSampleRate(builder, sampleRate);
+    if (ring) AAudioStreamBuilder_setDataCallback(builder, aaudioDataCallback, stream);
 
-    result = AAudioStreamBuilder_openStream(builder, &stream);
+    result = AAudioStreamBuilder_openStream(builder, &stream->aaudioStream);
     if (result != AAUDIO_OK) {
         AAudioStreamBuilder_delete(builder);
+        free(stream);
         return NULL;
     }
 
-    AAudioStream_setBufferSizeInFrames(stream, bufferSize);
+    AAudioStream_setBufferSizeInFrames(stream->aaudioStream, bufferSize);
+    stream->aaudioFrameBytes = AAudioStream_getChannelCount(stream->aaudioStream) * (AAudioStream_getFormat(stream->aaudioStream) == AAUDIO_FORMAT_PCM_FLOAT ? 4 : 2);
 
     result = AAudioStreamBuilder_delete(builder);
-    if (result != AAUDIO_OK) return NULL;
+    if (result != AAUDIO_OK) {
+        AAudioStream_close(stream->aaudioStream);
+        free(stream);
+        return NULL;
+    }
 
     return stream;
 }
@@ -73,46 +141,51 @@ static void aaudioFlush(AAudioStream *aaudioStream) {
 
 JNIEXPORT jlong JNICALL
 Java_com_winlator_alsaserver_ALSAClient_create(JNIEnv *env, jobject obj, jint format,
-                                               jbyte channelCount, jint sampleRate, jint bufferSize) {
-    return (jlong)aaudioCreate(format, channelCount, sampleRate, bufferSize);
+                                               jbyte channelCount, jint sampleRate, jint bufferSize,
+                                               jobject ringBuffer) {
+    uint8_t *ring = ringBuffer ? (*env)->GetDirectBufferAddress(env, ringBuffer) : NULL;
+    return (jlong)aaudioCreate(format, channelCount, sampleRate, bufferSize, ring);
 }
 
 JNIEXPORT jint JNICALL
 Java_com_winlator_alsaserver_ALSAClient_write(JNIEnv *env, jobject obj, jlong streamPtr, jobject buffer,
                                               jint numFrames) {
-    AAudioStream *aaudioStream = (AAudioStream*)streamPtr;
-    if (aaudioStream) {
-        return aaudioWrite(aaudioStream, (*env)->GetDirectBufferAddress(env, buffer), numFrames);
+    ALSAStream *stream = (ALSAStream*)streamPtr;
+    if (stream && !stream->ring) {
+        return aaudioWrite(stream->aaudioStream, (*env)->GetDirectBufferAddress(env, buffer), numFrames);
     }
     else return -1;
 }
 
 JNIEXPORT void JNICALL
 Java_com_winlator_alsaserver_ALSAClient_start(JNIEnv *env, jobject obj, jlong streamPtr) {
-    AAudioStream *aaudioStream = (AAudioStream*)streamPtr;
-    if (aaudioStream) aaudioStart(aaudioStream);
+    ALSAStream *stream = (ALSAStream*)streamPtr;
+    if (stream) aaudioStart(stream->aaudioStream);
 }
 
 JNIEXPORT void JNICALL
 Java_com_winlator_alsaserver_ALSAClient_stop(JNIEnv *env, jobject obj, jlong streamPtr) {
-    AAudioStream *aaudioStream = (AAudioStream*)streamPtr;
-    if (aaudioStream) aaudioStop(aaudioStream);
+    ALSAStream *stream = (ALSAStream*)streamPtr;
+    if (stream) aaudioStop(stream->aaudioStream);
 }
 
 JNIEXPORT void JNICALL
 Java_com_winlator_alsaserver_ALSAClient_pause(JNIEnv *env, jobject obj, jlong streamPtr) {
-    AAudioStream *aaudioStream = (AAudioStream*)streamPtr;
-    if (aaudioStream) aaudioPause(aaudioStream);
+    ALSAStream *stream = (ALSAStream*)streamPtr;
+    if (stream) aaudioPause(stream->aaudioStream);
 }
 
 JNIEXPORT void JNICALL
 Java_com_winlator_alsaserver_ALSAClient_flush(JNIEnv *env, jobject obj, jlong streamPtr) {
-    AAudioStream *aaudioStream = (AAudioStream*)streamPtr;
-    if (aaudioStream) aaudioFlush(aaudioStream);
+    ALSAStream *stream = (ALSAStream*)streamPtr;
+    if (stream) aaudioFlush(stream->aaudioStream);
 }
 
 JNIEXPORT void JNICALL
 Java_com_winlator_alsaserver_ALSAClient_close(JNIEnv *env, jobject obj, jlong streamPtr) {
-    AAudioStream *aaudioStream = (AAudioStream*)streamPtr;
-    if (aaudioStream) AAudioStream_close(aaudioStream);
+    ALSAStream *stream = (ALSAStream*)streamPtr;
+    if (stream) {
+        AAudioStream_close(stream->aaudioStream);
+        free(stream);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+#include <jni.h>
+#include <fcntl.h>
+#include <unistd.h>
+#include <stdlib.h>
+#include <stdint.h>
+#include <stdbool.h>
+#include <sys/ioctl.h>
+#include <linux/fs.h>
+#include <linux/fiemap.h>
+
+#ifndef FICLONE
+#define FICLONE _IOW(0x94, 9, int)
+#endif
+
+#define FIEMAP_EXTENT_COUNT 64
+
+JNIEXPORT jboolean JNICALL
+Java_com_winlator_container_ContentStore_cloneFile(JNIEnv *env, jclass obj, jstring srcPath, jstring dstPath) {
+    const char *srcPathPtr = (*env)->GetStringUTFChars(env, srcPath, NULL);
+    const char *dstPathPtr = (*env)->GetStringUTFChars(env, dstPath, NULL);
+    bool success = false;
+
+    int srcFd = open(srcPathPtr, O_RDONLY | O_CLOEXEC);
+    if (srcFd >= 0) {
+        unlink(dstPathPtr);
+        int dstFd = open(dstPathPtr, O_WRONLY | O_CREAT | O_EXCL | O_CLOEXEC, 0666);
+        if (dstFd >= 0) {
+            success = ioctl(dstFd, FICLONE, srcFd) == 0;
+            close(dstFd);
+            if (!success) unlink(dstPathPtr);
+        }
+        close(srcFd);
+    }
+
+    (*env)->ReleaseStringUTFChars(env, srcPath, srcPathPtr);
+    (*env)->ReleaseStringUTFChars(env, dstPath, dstPathPtr);
+    return success;
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_winlator_container_ContentStore_getSharedBytes(JNIEnv *env, jclass obj, jstring path) {
+    const char *pathPtr = (*env)->GetStringUTFChars(env, path, NULL);
+    int fd = open(pathPtr, O_RDONLY | O_CLOEXEC);
+    (*env)->ReleaseStringUTFChars(env, path, pathPtr);
+    if (fd < 0) return 0;
+
+    struct fiemap *fiemap = calloc(1, sizeof(struct fiemap) + FIEMAP_EXTENT_COUNT * sizeof(struct fiemap_extent));
+    jlong sharedBytes = 0;
+    uint64_t start = 0;
+    bool last = false;
+
+    while (fiemap && !last) {
+        fiemap->fm_start = start;
+        fiemap->fm_length = FIEMAP_MAX_OFFSET - start;
+        fiemap->fm_flags = 0;
+        fiemap->fm_extent_count = FIEMAP_EXTENT_COUNT;
+        if (ioctl(fd, FS_IOC_FIEMAP, fiemap) != 0 || fiemap->fm_mapped_extents == 0) break;
+
+        for (uint32_t i = 0; i < fiemap->fm_mapped_extents; i++) {
+            struct fiemap_extent *extent = &fiemap->fm_extents[i];
+            if (extent->fe_flags & FIEMAP_EXTENT_SHARED) sharedBytes += extent->fe_length;
+            if (extent->fe_flags & FIEMAP_EXTENT_LAST) last = true;
+            start = extent->fe_logical + extent->fe_length;
+        }
+    }
+
+    free(fiemap);
+    close(fd);
+    return sharedBytes;
+}
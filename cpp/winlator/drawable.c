@@ -6,83 +6,36 @@
 #include <math.h>
 #include <android/bitmap.h>
 #include <android/log.h>
+#include "pixel_kernels.h"
 
 #define WHITE 0xffffff
 #define BLACK 0x000000
 #define printf(...) __android_log_print(ANDROID_LOG_DEBUG, "System.out", __VA_ARGS__);
 
-enum GCFunction {GCF_CLEAR, GCF_AND, GCF_AND_REVERSE, GCF_COPY, GCF_AND_INVERTED, GCF_NO_OP, GCF_XOR, GCF_OR, GCF_NOR, GCF_EQUIV, GCF_INVERT, GCF_OR_REVERSE, GCF_COPY_INVERTED, GCF_OR_INVERTED, GCF_NAND, GCF_SET};
-
 static int packColor(int8_t r, int8_t g, int8_t b) {
     return ((r & 0xff00) << 8) | (g & 0xff00) | (b >> 8);
 }
 
-static void unpackColor(int color, uint8_t *rgba) {
-    rgba[2] = (color >> 16) & 255;
-    rgba[1] = (color >> 8) & 255;
-    rgba[0] = color & 255;
-    rgba[3] = 255;
-}
-
-static int8_t getBit(uint8_t *line, int x) {
-    uint8_t mask = (1 << (x & 7));
-    line += (x >> 3);
-    return (*line & mask) ? 1 : 0;
+static uint32_t toPixel(int color) {
+    return 0xff000000 | (color & 0xffffff);
 }
 
 static int getBitmapBytePad(int width) {
     return ((width + 32 - 1) >> 5) << 2;
 }
 
-static int setPixelOp(int srcColor, int dstColor, enum GCFunction gcFunction) {
-    switch (gcFunction) {
-        case GCF_CLEAR :
-            return BLACK;
-        case GCF_AND :
-            return srcColor & dstColor;
-        case GCF_AND_REVERSE :
-            return srcColor & ~dstColor;
-        case GCF_COPY :
-            return srcColor;
-        case GCF_AND_INVERTED :
-            return ~srcColor & dstColor;
-        case GCF_XOR :
-            return srcColor ^ dstColor;
-        case GCF_OR :
-            return srcColor | dstColor;
-        case GCF_NOR :
-            return ~srcColor & ~dstColor;
-        case GCF_EQUIV :
-            return ~srcColor ^ dstColor;
-        case GCF_INVERT :
-            return ~dstColor;
-        case GCF_OR_REVERSE :
-            return srcColor | ~dstColor;
-        case GCF_COPY_INVERTED :
-            return ~srcColor;
-        case GCF_OR_INVERTED :
-            return ~srcColor | dstColor;
-        case GCF_NAND :
-            return ~srcColor | ~dstColor;
-        case GCF_SET :
-            return WHITE;
-        case GCF_NO_OP :
-        default:
-            return dstColor;
-    }
-}
-
 JNIEXPORT void JNICALL
 Java_com_winlator_xserver_Drawable_drawBitmap(JNIEnv *env, jclass obj,
                                               jshort width, jshort height, jobject srcData,
                                               jobject dstData) {
     uint8_t *srcDataAddr = (*env)->GetDirectBufferAddress(env, srcData);
-    int *dstDataAddr = (*env)->GetDirectBufferAddress(env, dstData);
+    uint32_t *dstDataAddr = (*env)->GetDirectBufferAddress(env, dstData);
 
     int stride = getBitmapBytePad(width);
-    for (int16_t y = 0, x; y < height; y++) {
-        for (x = 0; x < width; x++) *dstDataAddr++ = getBit(srcDataAddr, x) ? WHITE : BLACK;
+    for (int16_t y = 0; y < height; y++) {
+        pixelsExpandBits(srcDataAddr, dstDataAddr, width, WHITE, BLACK);
         srcDataAddr += stride;
+        dstDataAddr += width;
     }
 }
 
@@ -112,22 +65,12 @@ Java_com_winlator_xserver_Drawable_copyAreaOp(JNIEnv *env, jclass obj, jshort sr
                                               jshort width, jshort height, jshort srcStride,
                                               jshort dstStride, jobject srcData,
                                               jobject dstData, int gcFunction) {
-    uint8_t *srcDataAddr = (*env)->GetDirectBufferAddress(env, srcData);
-    uint8_t *dstDataAddr = (*env)->GetDirectBufferAddress(env, dstData);
+    if (gcFunction == GCF_NO_OP) return;
+    uint32_t *srcDataAddr = (*env)->GetDirectBufferAddress(env, srcData);
+    uint32_t *dstDataAddr = (*env)->GetDirectBufferAddress(env, dstData);
 
     for (int16_t y = 0; y < height; y++) {
-        for (int16_t x = 0; x < width; x++) {
-            int i = (x + srcX + (y + srcY) * srcStride) * 4;
-            int j = (x + dstX + (y + dstY) * dstStride) * 4;
-            int srcColor = (srcDataAddr[i+0] << 16) | (srcDataAddr[i+1] << 8) | srcDataAddr[i+2];
-            int dstColor = (dstDataAddr[j+0] << 16) | (dstDataAddr[j+1] << 8) | dstDataAddr[j+2];
-
-            dstColor = setPixelOp(srcColor, dstColor, gcFunction);
-
-            dstDataAddr[j+0] = (dstColor >> 16) & 0xff;
-            dstDataAddr[j+1] = (dstColor >> 8) & 0xff;
-            dstDataAddr[j+2] = dstColor & 0xff;
-        }
+        pixelsCopyOp(srcDataAddr + srcX + (y + srcY) * srcStride, dstDataAddr + dstX + (y + dstY) * dstStride, width, gcFunction);
     }
 }
 
@@ -135,44 +78,29 @@ JNIEXPORT void JNICALL
 Java_com_winlator_xserver_Drawable_fillRect(JNIEnv *env, jclass obj, jshort x, jshort y,
                                             jshort width, jshort height, jint color, jshort stride,
                                             jobject data) {
-    uint8_t *dataAddr = (*env)->GetDirectBufferAddress(env, data);
-
-    uint8_t rgba[4];
-    unpackColor(color, rgba);
+    uint32_t *dataAddr = (*env)->GetDirectBufferAddress(env, data);
+    uint32_t pixel = toPixel(color);
 
-    int rowSize = width * 4;
-    uint8_t *row = malloc(rowSize);
-
-    for (int i = 0; i < rowSize; i += 4) memcpy(row + i, rgba, 4);
     for (int16_t i = 0; i < height; i++) {
-        memcpy(dataAddr + (x + (i + y) * stride) * 4, row, rowSize);
+        pixelsFill(dataAddr + x + (i + y) * stride, width, pixel);
     }
-
-    free(row);
 }
 
 JNIEXPORT void JNICALL
 Java_com_winlator_xserver_Drawable_drawLine(JNIEnv *env, jclass obj, jshort x0, jshort y0,
                                             jshort x1, jshort y1, jint color, jshort lineWidth,
                                             jshort stride, jobject data) {
-    uint8_t *dataAddr = (*env)->GetDirectBufferAddress(env, data);
+    uint32_t *dataAddr = (*env)->GetDirectBufferAddress(env, data);
     int dx =  abs(x1-x0);
     int dy = -abs(y1-y0);
     int8_t sx = x0 < x1 ? 1 : -1;
     int8_t sy = y0 < y1 ? 1 : -1;
     int e1 = dx + dy, e2;
 
-    uint8_t rgba[4];
-    unpackColor(color, rgba);
-
-    int rowSize = lineWidth * 4;
-    uint8_t *row = malloc(lineWidth * 4);
-
-    int16_t i;
-    for (i = 0; i < rowSize; i += 4) memcpy(row + i, rgba, 4);
+    uint32_t pixel = toPixel(color);
 
     while (true) {
-        for (i = 0; i < lineWidth; i++) memcpy(dataAddr + (x0 + (i + y0) * stride) * 4, row, rowSize);
+        for (int16_t i = 0; i < lineWidth; i++) pixelsFill(dataAddr + x0 + (i + y0) * stride, lineWidth, pixel);
         if (x0 == x1 && y0 == y1) break;
 
         e2 = e1 * 2;
@@ -185,8 +113,6 @@ Java_com_winlator_xserver_Drawable_drawLine(JNIEnv *env, jclass obj, jshort x0,
             y0 += sy;
         }
     }
-
-    free(row);
 }
 
 JNIEXPORT void JNICALL
@@ -196,17 +122,15 @@ Java_com_winlator_xserver_Drawable_drawAlphaMaskedBitmap(JNIEnv *env, jclass obj
                                                          jbyte backGreen, jbyte backBlue,
                                                          jobject srcData, jobject maskData,
                                                          jobject dstData) {
-    int *srcDataAddr = (*env)->GetDirectBufferAddress(env, srcData);
-    int *maskDataAddr = (*env)->GetDirectBufferAddress(env, maskData);
-    int *dstDataAddr = (*env)->GetDirectBufferAddress(env, dstData);
+    uint32_t *srcDataAddr = (*env)->GetDirectBufferAddress(env, srcData);
+    uint32_t *maskDataAddr = (*env)->GetDirectBufferAddress(env, maskData);
+    uint32_t *dstDataAddr = (*env)->GetDirectBufferAddress(env, dstData);
 
     int foreColor = packColor(foreRed, foreGreen, foreBlue);
     int backColor = packColor(backRed, backGreen, backBlue);
 
     jlong dstLength = (*env)->GetDirectBufferCapacity(env, dstData) / 4;
-    for (int i = 0; i < dstLength; i++) {
-        dstDataAddr[i] = maskDataAddr[i] == WHITE ? (srcDataAddr[i] == WHITE ? foreColor : backColor) | 0xff000000 : 0x00000000;
-    }
+    pixelsMaskedSelect(srcDataAddr, maskDataAddr, dstDataAddr, dstLength, WHITE, foreColor, backColor);
 }
 
 JNIEXPORT void JNICALL
@@ -220,9 +144,7 @@ Java_com_winlator_xserver_Drawable_fromBitmap(JNIEnv *env, jclass obj, jobject b
     AndroidBitmap_getInfo(env, bitmap, &info);
     AndroidBitmap_lockPixels(env, bitmap, (void**)&pixels);
 
-    for (int i = 0, size = info.width * info.height * 4; i < size; i++) {
-        memcpy(dataAddr + i, pixels + i, 4);
-    }
+    memcpy(dataAddr, pixels, info.width * info.height * 4);
 
     AndroidBitmap_unlockPixels(env, bitmap);
 }
@@ -0,0 +1,102 @@
+#include <stddef.h>
+#include "pixel_kernels.h"
+
+#define RGB_MASK 0x00ffffffu
+#define ALPHA_MASK 0xff000000u
+
+typedef uint32_t vec4u __attribute__((vector_size(16)));
+typedef uint32_t vec4u_unaligned __attribute__((vector_size(16), aligned(4), may_alias));
+
+#define LOAD(addr) (*(const vec4u_unaligned*)(addr))
+#define STORE(addr, value) (*(vec4u_unaligned*)(addr) = (value))
+#define SPLAT(value) ((vec4u){(value), (value), (value), (value)})
+
+#define NIBBLE_MASK(n) {(n) & 1 ? ~0u : 0, (n) & 2 ? ~0u : 0, (n) & 4 ? ~0u : 0, (n) & 8 ? ~0u : 0}
+
+static const vec4u nibbleMasks[16] = {
+    NIBBLE_MASK(0), NIBBLE_MASK(1), NIBBLE_MASK(2), NIBBLE_MASK(3),
+    NIBBLE_MASK(4), NIBBLE_MASK(5), NIBBLE_MASK(6), NIBBLE_MASK(7),
+    NIBBLE_MASK(8), NIBBLE_MASK(9), NIBBLE_MASK(10), NIBBLE_MASK(11),
+    NIBBLE_MASK(12), NIBBLE_MASK(13), NIBBLE_MASK(14), NIBBLE_MASK(15)
+};
+
+#define ROW_OP(name, op) \
+static void name(const uint32_t *src, uint32_t *dst, int width) { \
+    int x = 0; \
+    for (; x + 4 <= width; x += 4) { \
+        vec4u s = LOAD(src + x); \
+        vec4u d = LOAD(dst + x); \
+        STORE(dst + x, ((op) & RGB_MASK) | (d & ALPHA_MASK)); \
+    } \
+    for (; x < width; x++) { \
+        uint32_t s = src[x]; \
+        uint32_t d = dst[x]; \
+        dst[x] = ((op) & RGB_MASK) | (d & ALPHA_MASK); \
+    } \
+}
+
+ROW_OP(rowClear, s & 0)
+ROW_OP(rowAnd, s & d)
+ROW_OP(rowAndReverse, s & ~d)
+ROW_OP(rowCopy, s)
+ROW_OP(rowAndInverted, ~s & d)
+ROW_OP(rowXor, s ^ d)
+ROW_OP(rowOr, s | d)
+ROW_OP(rowNor, ~s & ~d)
+ROW_OP(rowEquiv, ~s ^ d)
+ROW_OP(rowInvert, ~d | (s & 0))
+ROW_OP(rowOrReverse, s | ~d)
+ROW_OP(rowCopyInverted, ~s)
+ROW_OP(rowOrInverted, ~s | d)
+ROW_OP(rowNand, ~s | ~d)
+ROW_OP(rowSet, s | ~0u)
+
+static void (*const rowOps[])(const uint32_t*, uint32_t*, int) = {
+    rowClear, rowAnd, rowAndReverse, rowCopy, rowAndInverted, NULL, rowXor, rowOr,
+    rowNor, rowEquiv, rowInvert, rowOrReverse, rowCopyInverted, rowOrInverted, rowNand, rowSet
+};
+
+void pixelsCopyOp(const uint32_t *src, uint32_t *dst, int width, enum GCFunction gcFunction) {
+    if (gcFunction < GCF_CLEAR || gcFunction > GCF_SET || !rowOps[gcFunction]) return;
+    rowOps[gcFunction](src, dst, width);
+}
+
+void pixelsFill(uint32_t *dst, int width, uint32_t color) {
+    vec4u value = SPLAT(color);
+    int x = 0;
+    for (; x + 16 <= width; x += 16) {
+        STORE(dst + x + 0, value);
+        STORE(dst + x + 4, value);
+        STORE(dst + x + 8, value);
+        STORE(dst + x + 12, value);
+    }
+    for (; x + 4 <= width; x += 4) STORE(dst + x, value);
+    for (; x < width; x++) dst[x] = color;
+}
+
+void pixelsExpandBits(const uint8_t *src, uint32_t *dst, int width, uint32_t setColor, uint32_t unsetColor) {
+    vec4u set = SPLAT(setColor);
+    vec4u unset = SPLAT(unsetColor);
+    int x = 0;
+    for (; x + 8 <= width; x += 8) {
+        uint8_t bits = src[x >> 3];
+        vec4u low = nibbleMasks[bits & 15];
+        vec4u high = nibbleMasks[bits >> 4];
+        STORE(dst + x + 0, (set & low) | (unset & ~low));
+        STORE(dst + x + 4, (set & high) | (unset & ~high));
+    }
+    for (; x < width; x++) dst[x] = (src[x >> 3] & (1 << (x & 7))) ? setColor : unsetColor;
+}
+
+void pixelsMaskedSelect(const uint32_t *src, const uint32_t *mask, uint32_t *dst, int count, uint32_t keyColor, uint32_t foreColor, uint32_t backColor) {
+    vec4u key = SPLAT(keyColor);
+    vec4u fore = SPLAT(foreColor | ALPHA_MASK);
+    vec4u back = SPLAT(backColor | ALPHA_MASK);
+    int i = 0;
+    for (; i + 4 <= count; i += 4) {
+        vec4u visible = (vec4u)(LOAD(mask + i) == key);
+        vec4u isFore = (vec4u)(LOAD(src + i) == key);
+        STORE(dst + i, visible & ((fore & isFore) | (back & ~isFore)));
+    }
+    for (; i < count; i++) dst[i] = mask[i] == keyColor ? (src[i] == keyColor ? foreColor : backColor) | ALPHA_MASK : 0;
+}
@@ -0,0 +1,13 @@
+#pragma once
+
+#include <stdint.h>
+
+enum GCFunction {GCF_CLEAR, GCF_AND, GCF_AND_REVERSE, GCF_COPY, GCF_AND_INVERTED, GCF_NO_OP, GCF_XOR, GCF_OR, GCF_NOR, GCF_EQUIV, GCF_INVERT, GCF_OR_REVERSE, GCF_COPY_INVERTED, GCF_OR_INVERTED, GCF_NAND, GCF_SET};
+
+void pixelsCopyOp(const uint32_t *src, uint32_t *dst, int width, enum GCFunction gcFunction);
+
+void pixelsFill(uint32_t *dst, int width, uint32_t color);
+
+void pixelsExpandBits(const uint8_t *src, uint32_t *dst, int width, uint32_t setColor, uint32_t unsetColor);
+
+void pixelsMaskedSelect(const uint32_t *src, const uint32_t *mask, uint32_t *dst, int count, uint32_t keyColor, uint32_t foreColor, uint32_t backColor);